@@ -0,0 +1,135 @@
+package com.gill.consensus.raftplus;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.gill.consensus.raftplus.apis.DataStorage;
+import com.gill.consensus.raftplus.common.Utils;
+import com.gill.consensus.raftplus.model.LogEntry;
+import com.gill.consensus.raftplus.service.PrintService;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * ApplyPipeline 按提交索引水位顺序应用日志
+ * <p>
+ * 在独立线程上从状态机的 applyIdx 之后读取已提交的日志，按批调用 {@link DataStorage#applyBatch(List)}，应用后通知 leader
+ * 完成对应的提案。提交索引推进时唤醒，状态机的耗时不再拖慢追加响应、心跳和选举，也不占用节点锁
+ *
+ * @author gill
+ * @version 2023/09/20
+ **/
+@Slf4j
+public class ApplyPipeline implements Runnable, PrintService {
+
+	/**
+	 * 没有可应用的日志时最长挂起时间，提交索引推进时会被提前唤醒
+	 */
+	private static final long TIMEOUT = 50L;
+
+	private final Node node;
+
+	private ExecutorService executor;
+
+	private volatile boolean running = false;
+
+	private volatile Thread worker;
+
+	@Getter
+	private volatile long batches = 0;
+
+	@Getter
+	private volatile long entries = 0;
+
+	public ApplyPipeline(Node node) {
+		this.node = node;
+	}
+
+	/**
+	 * 启动
+	 */
+	public synchronized void start() {
+		stop();
+		running = true;
+		executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(1),
+				r -> new Thread(r, "apply-" + node.getID()));
+		executor.execute(this);
+	}
+
+	/**
+	 * 停止，正在应用的批次完成后退出
+	 */
+	public synchronized void stop() {
+		running = false;
+		ExecutorService tmp = executor;
+		executor = null;
+		if (tmp != null) {
+			wakeUp();
+			tmp.shutdown();
+			Utils.awaitTermination(tmp, "applyPipeline");
+		}
+	}
+
+	/**
+	 * 提交索引推进时调用
+	 */
+	public void wakeUp() {
+		Optional.ofNullable(worker).ifPresent(LockSupport::unpark);
+	}
+
+	@Override
+	public void run() {
+		worker = Thread.currentThread();
+		while (running) {
+			try {
+				if (applyNext()) {
+					continue;
+				}
+			} catch (Exception e) {
+				log.error("node: {} applies logs failed, e: {}", node.getID(), e.getMessage(), e);
+			}
+			LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(TIMEOUT));
+		}
+		worker = null;
+	}
+
+	/**
+	 * 应用下一批已提交的日志
+	 *
+	 * @return 是否应用
+	 */
+	boolean applyNext() {
+		DataStorage dataStorage = node.getDataStorage();
+		int from = dataStorage.getApplyIdx() + 1;
+		int to = Math.min(node.getCommittedIdx(), from + Math.max(1, node.getConfig().getApplyBatchSize()) - 1);
+		if (from > to) {
+			return false;
+		}
+		List<LogEntry> logEntries = node.getLogManager().getLogs(from, to + 1);
+		if (logEntries.isEmpty() || logEntries.get(0).getIndex() != from) {
+			log.warn("node: {} can not find committed log {}, wait for snapshot", node.getID(), from);
+			return false;
+		}
+		List<String> results = dataStorage.applyBatch(logEntries);
+		batches++;
+		entries += logEntries.size();
+		node.getProposeHelper().onApplied(logEntries, results);
+		return true;
+	}
+
+	@Override
+	public String println() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("running: ").append(running).append(System.lineSeparator());
+		sb.append("apply idx: ").append(node.getDataStorage().getApplyIdx()).append(System.lineSeparator());
+		sb.append("applied batches: ").append(batches).append(", entries: ").append(entries)
+				.append(System.lineSeparator());
+		return sb.toString();
+	}
+}
@@ -0,0 +1,191 @@
+package com.gill.consensus.raftplus;
+
+import java.util.List;
+
+import com.gill.consensus.raftplus.model.LogEntry;
+
+/**
+ * LogCache 按索引寻址的环形日志缓存，保存连续的 [firstIdx, lastIdx] 日志，非线程安全
+ *
+ * @author gill
+ * @version 2023/09/20
+ **/
+class LogCache {
+
+	/**
+	 * 日志对象头、字段及数组对象头的估算开销
+	 */
+	private static final int ENTRY_OVERHEAD = 64;
+
+	private final int capacity;
+
+	private final long maxBytes;
+
+	private LogEntry[] entries;
+
+	/**
+	 * 第一条日志在数组中的位置
+	 */
+	private int head = 0;
+
+	private int firstIdx;
+
+	private int size = 0;
+
+	private long bytes = 0;
+
+	LogCache(int capacity, long maxBytes, LogEntry first) {
+		this.capacity = Math.max(capacity, 2);
+		this.entries = new LogEntry[this.capacity + 1];
+		this.maxBytes = maxBytes;
+		reset(first);
+	}
+
+	static long sizeOf(LogEntry logEntry) {
+		return ENTRY_OVERHEAD + logEntry.getPayload().length;
+	}
+
+	private int slot(int idx) {
+		return (int) (((long) idx - firstIdx + head) % entries.length);
+	}
+
+	int firstIdx() {
+		return firstIdx;
+	}
+
+	int lastIdx() {
+		return firstIdx + size - 1;
+	}
+
+	int size() {
+		return size;
+	}
+
+	long bytes() {
+		return bytes;
+	}
+
+	LogEntry last() {
+		return entries[slot(lastIdx())];
+	}
+
+	/**
+	 * 查询
+	 *
+	 * @param idx
+	 *            索引
+	 * @return 不在缓存中时返回 null
+	 */
+	LogEntry get(int idx) {
+		if (idx < firstIdx || idx > lastIdx()) {
+			return null;
+		}
+		return entries[slot(idx)];
+	}
+
+	/**
+	 * 获取 [start, end) 中位于缓存内的日志
+	 *
+	 * @param start
+	 *            开始索引
+	 * @param end
+	 *            结束索引
+	 * @param out
+	 *            结果
+	 */
+	void range(int start, int end, List<LogEntry> out) {
+		int to = (int) Math.min(end - 1L, lastIdx());
+		for (int idx = Math.max(start, firstIdx); idx <= to; idx++) {
+			out.add(entries[slot(idx)]);
+		}
+	}
+
+	/**
+	 * 追加，调用方需保证索引为 lastIdx + 1。未持久化的日志不能淘汰，数组写满时临时扩容
+	 *
+	 * @param logEntry
+	 *            日志
+	 */
+	void add(LogEntry logEntry) {
+		if (size == entries.length) {
+			LogEntry[] newEntries = new LogEntry[entries.length * 2];
+			for (int i = 0; i < size; i++) {
+				newEntries[i] = entries[(head + i) % entries.length];
+			}
+			entries = newEntries;
+			head = 0;
+		}
+		size++;
+		entries[slot(lastIdx())] = logEntry;
+		bytes += sizeOf(logEntry);
+	}
+
+	/**
+	 * 是否超出容量，至少保留一条日志
+	 *
+	 * @return 是否需要淘汰
+	 */
+	boolean overflow() {
+		return size > 1 && (size > capacity || bytes > maxBytes);
+	}
+
+	/**
+	 * 淘汰第一条日志
+	 *
+	 * @return 被淘汰的日志
+	 */
+	LogEntry evictFirst() {
+		LogEntry first = entries[head];
+		entries[head] = null;
+		head = (head + 1) % entries.length;
+		firstIdx++;
+		size--;
+		bytes -= sizeOf(first);
+		return first;
+	}
+
+	/**
+	 * 删除 idx 之前的日志，至少保留一条日志
+	 *
+	 * @param idx
+	 *            索引
+	 */
+	void truncatePrefix(int idx) {
+		while (size > 1 && firstIdx < idx) {
+			evictFirst();
+		}
+	}
+
+	/**
+	 * 删除 idx 及之后的日志
+	 *
+	 * @param idx
+	 *            索引
+	 */
+	void truncateFrom(int idx) {
+		while (size > 0 && lastIdx() >= idx) {
+			int slot = slot(lastIdx());
+			bytes -= sizeOf(entries[slot]);
+			entries[slot] = null;
+			size--;
+		}
+	}
+
+	/**
+	 * 清空缓存，并以 first 为第一条日志
+	 *
+	 * @param first
+	 *            第一条日志
+	 */
+	void reset(LogEntry first) {
+		truncateFrom(firstIdx);
+		head = 0;
+		firstIdx = first.getIndex();
+		add(first);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("[%s, %s], size: %s, bytes: %s", firstIdx, lastIdx(), size, bytes);
+	}
+}
@@ -1,18 +1,21 @@
 package com.gill.consensus.raftplus;
 
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
-import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import com.gill.consensus.raftplus.apis.LogStorage;
+import com.gill.consensus.raftplus.common.LogEntryCodec;
 import com.gill.consensus.raftplus.config.RaftConfig;
+import com.gill.consensus.raftplus.exception.StorageException;
 import com.gill.consensus.raftplus.model.LogEntry;
 import com.gill.consensus.raftplus.service.PrintService;
 
-import javafx.util.Pair;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * LogEntries
@@ -20,28 +23,69 @@ import javafx.util.Pair;
  * @author gill
  * @version 2023/09/08
  **/
+@Slf4j
 public class LogManager implements PrintService {
 
 	private final LogStorage logStorage;
 
 	private RaftConfig.LogConfig logConfig;
 
-	private final Lock writeLock = new ReentrantReadWriteLock().writeLock();
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
-	private final Lock readLock = new ReentrantReadWriteLock().readLock();
+	private final Lock readLock = lock.readLock();
+
+	private final Lock writeLock = lock.writeLock();
 
 	/**
-	 * logs 必须有一个(0, 0, "")的日志
+	 * 组提交锁，持有者负责把 pendingLogs 一次性写入 logStorage
 	 */
-	private final TreeMap<Integer, LogEntry> logs = new TreeMap<>(Comparator.comparingInt(l -> l));
+	private final Lock syncLock = new ReentrantLock();
 
-	{
-		logs.put(0, new LogEntry(0, 0, ""));
-	}
+	/**
+	 * 已写入内存但未持久化的日志，受 writeLock 保护
+	 */
+	private List<LogEntry> pendingLogs = new ArrayList<>();
+
+	/**
+	 * 持久化水位，小于等于该索引的日志均已持久化
+	 */
+	private volatile int durableIdx = 0;
+
+	/**
+	 * 日志起始位置，之前的日志已被快照覆盖并删除
+	 */
+	private volatile int startIdx = 0;
+
+	/**
+	 * 上次取走 pendingLogs 后被覆盖写的最小索引，受 writeLock 保护
+	 */
+	private int overwriteIdx = Integer.MAX_VALUE;
+
+	/**
+	 * 最近日志的环形缓存，缓存中必须至少有一条日志，初始为(0, 0, "")
+	 */
+	private final LogCache logs;
+
+	/**
+	 * 最后一条日志，持有 writeLock 修改缓存后发布，读取时无锁
+	 */
+	private volatile LogEntry lastLog;
+
+	/**
+	 * 累计写入的日志字节数，按存储记录大小计算，受 writeLock 保护
+	 */
+	private volatile long appendedBytes = 0;
+
+	/**
+	 * 累计删除日志释放的存储字节数
+	 */
+	private final AtomicLong reclaimedBytes = new AtomicLong();
 
 	public LogManager(LogStorage logStorage, RaftConfig.LogConfig logConfig) {
 		this.logStorage = logStorage;
 		this.logConfig = logConfig;
+		this.logs = new LogCache(logConfig.getCacheCapacity(), logConfig.getCacheBytes(), new LogEntry(0, 0, ""));
+		this.lastLog = logs.last();
 	}
 
 	public void setLogConfig(RaftConfig.LogConfig logConfig) {
@@ -59,26 +103,32 @@ public class LogManager implements PrintService {
 		writeLock.lock();
 		try {
 			for (LogEntry logEntry : logEntries) {
-				logs.put(logEntry.getIndex(), logEntry);
+				if (logEntry.getIndex() == logs.lastIdx() + 1) {
+					addLog(logEntry);
+				} else {
+					logs.reset(logEntry);
+				}
 			}
+			durableIdx = logs.lastIdx();
+			int loadedIdx = logEntries.isEmpty() ? 0 : logEntries.get(0).getIndex();
+			int firstIdx = logStorage.firstIdx();
+
+			// 存储中更早的日志不加载到内存，按需读取
+			startIdx = firstIdx >= 0 && firstIdx < loadedIdx ? firstIdx : loadedIdx;
+			evict();
+			lastLog = logs.last();
 		} finally {
 			writeLock.unlock();
 		}
 	}
 
 	/**
-	 * 最大索引位置
+	 * 最后一条日志，无锁且不分配对象
 	 *
-	 * @return 最大索引位置
+	 * @return 最后一条日志
 	 */
-	public Pair<Long, Integer> lastLog() {
-		readLock.lock();
-		try {
-			LogEntry logEntry = logs.lastEntry().getValue();
-			return new Pair<>(logEntry.getTerm(), logEntry.getIndex());
-		} finally {
-			readLock.unlock();
-		}
+	public LogEntry lastLog() {
+		return lastLog;
 	}
 
 	/**
@@ -90,13 +140,13 @@ public class LogManager implements PrintService {
 	 *            命令
 	 * @return 日志
 	 */
-	public LogEntry createLog(long term, String command) {
+	public LogEntry createLog(long term, byte[] command) {
 		writeLock.lock();
 		try {
-			int idx = logs.lastEntry().getKey() + 1;
+			int idx = logs.lastIdx() + 1;
 			LogEntry logEntry = new LogEntry(idx, term, command);
-			logs.put(idx, logEntry);
-			logStorage.write(logEntry);
+			addLog(logEntry);
+			pendingLogs.add(logEntry);
 			return logEntry;
 		} finally {
 			writeLock.unlock();
@@ -104,7 +154,33 @@ public class LogManager implements PrintService {
 	}
 
 	/**
-	 * put 日志
+	 * 批量创建日志，在一次加锁内分配连续的索引，之后一次 {@link #sync(int)} 即可把整批日志合并写入
+	 *
+	 * @param term
+	 *            任期
+	 * @param commands
+	 *            命令
+	 * @return 日志，与 commands 一一对应
+	 */
+	public List<LogEntry> createLogs(long term, List<byte[]> commands) {
+		List<LogEntry> logEntries = new ArrayList<>(commands.size());
+		writeLock.lock();
+		try {
+			int idx = logs.lastIdx();
+			for (byte[] command : commands) {
+				LogEntry logEntry = new LogEntry(++idx, term, command);
+				addLog(logEntry);
+				logEntries.add(logEntry);
+			}
+			pendingLogs.addAll(logEntries);
+			return logEntries;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * put 日志，需调用 {@link #sync(int)} 等待持久化。与已有日志冲突时删除冲突位置及之后的日志
 	 * 
 	 * @param logEntry
 	 *            日志
@@ -112,8 +188,163 @@ public class LogManager implements PrintService {
 	public void appendLog(LogEntry logEntry) {
 		writeLock.lock();
 		try {
-			logs.put(logEntry.getIndex(), logEntry);
-			logStorage.write(logEntry);
+			int idx = logEntry.getIndex();
+			int lastIdx = logs.lastIdx();
+			if (idx < startIdx) {
+
+				// 已被快照覆盖的日志必然已提交，无需再写
+				return;
+			}
+			if (idx <= lastIdx) {
+
+				// 已淘汰出缓存的日志从存储中读取比较，只在任期不一致时才删除之后的日志
+				LogEntry origin = lookup(idx);
+				if (origin != null && origin.getTerm() == logEntry.getTerm()) {
+					return;
+				}
+				if (idx <= durableIdx) {
+					durableIdx = idx - 1;
+				}
+				overwriteIdx = Math.min(overwriteIdx, idx);
+				if (idx > logs.firstIdx()) {
+					logs.truncateFrom(idx);
+				} else {
+					resetLog(logEntry);
+					return;
+				}
+			} else if (idx > lastIdx + 1) {
+
+				// 日志不连续（如安装快照），以该日志为起点
+				resetLog(logEntry);
+				startIdx = idx;
+				return;
+			}
+			addLog(logEntry);
+			pendingLogs.add(logEntry);
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * 查询日志，不在缓存中时从存储读取，需持有锁
+	 */
+	private LogEntry lookup(int index) {
+		LogEntry logEntry = logs.get(index);
+		if (logEntry != null || index > logs.lastIdx() || index < startIdx) {
+			return logEntry;
+		}
+		List<LogEntry> entries = logStorage.read(index, 1);
+		return entries.isEmpty() ? null : entries.get(0);
+	}
+
+	private void resetLog(LogEntry logEntry) {
+		logs.reset(logEntry);
+		pendingLogs.add(logEntry);
+		lastLog = logEntry;
+		appendedBytes += LogEntryCodec.recordSize(logEntry);
+	}
+
+	/**
+	 * 追加到缓存，并淘汰已持久化的旧日志
+	 */
+	private void addLog(LogEntry logEntry) {
+		logs.add(logEntry);
+		evict();
+		lastLog = logEntry;
+		appendedBytes += LogEntryCodec.recordSize(logEntry);
+	}
+
+	/**
+	 * 淘汰已持久化的旧日志，需持有 writeLock。存储无法读回日志时不淘汰
+	 */
+	private void evict() {
+		if (!logStorage.readable()) {
+			return;
+		}
+		while (logs.overflow() && logs.firstIdx() <= durableIdx) {
+			logs.evictFirst();
+		}
+	}
+
+	/**
+	 * 持久化水位
+	 *
+	 * @return 小于等于该索引的日志均已持久化
+	 */
+	public int getDurableIdx() {
+		return durableIdx;
+	}
+
+	/**
+	 * 等待 idx 及之前的日志持久化。并发的调用者由先拿到锁的线程把所有待写日志合并为一次写入和一次刷盘。
+	 * 写入失败时日志放回待写队列并抛出异常，正常返回时 idx 及之前的日志一定已持久化
+	 *
+	 * @param idx
+	 *            日志索引
+	 * @throws StorageException
+	 *             写入失败
+	 */
+	public void sync(int idx) {
+		if (durableIdx >= idx) {
+			return;
+		}
+		syncLock.lock();
+		try {
+			if (durableIdx >= idx) {
+				return;
+			}
+			List<LogEntry> batch;
+			writeLock.lock();
+			try {
+				batch = pendingLogs;
+				pendingLogs = new ArrayList<>();
+				overwriteIdx = Integer.MAX_VALUE;
+			} finally {
+				writeLock.unlock();
+			}
+			if (batch.isEmpty()) {
+				if (durableIdx < idx) {
+					throw new StorageException("log " + idx + " is not pending, durable index: " + durableIdx);
+				}
+				return;
+			}
+			try {
+				logStorage.write(batch);
+			} catch (RuntimeException e) {
+				putback(batch);
+				throw e;
+			}
+			int target = batch.get(batch.size() - 1).getIndex();
+			writeLock.lock();
+			try {
+
+				// 写盘期间被覆盖写的日志需要重新持久化
+				durableIdx = Math.min(target, overwriteIdx - 1);
+				evict();
+			} finally {
+				writeLock.unlock();
+			}
+		} finally {
+			syncLock.unlock();
+		}
+	}
+
+	/**
+	 * 写入失败的日志放回待写队列之前，写盘期间已被覆盖写的部分丢弃
+	 */
+	private void putback(List<LogEntry> batch) {
+		writeLock.lock();
+		try {
+			List<LogEntry> pending = new ArrayList<>(batch.size() + pendingLogs.size());
+			for (LogEntry logEntry : batch) {
+				if (logEntry.getIndex() < overwriteIdx) {
+					pending.add(logEntry);
+				}
+			}
+			pending.addAll(pendingLogs);
+			pendingLogs = pending;
+			overwriteIdx = Integer.MAX_VALUE;
 		} finally {
 			writeLock.unlock();
 		}
@@ -129,7 +360,7 @@ public class LogManager implements PrintService {
 	public LogEntry getLog(int index) {
 		readLock.lock();
 		try {
-			return logs.get(index);
+			return lookup(index);
 		} finally {
 			readLock.unlock();
 		}
@@ -147,21 +378,126 @@ public class LogManager implements PrintService {
 	public List<LogEntry> getLogs(int start, int end) {
 		readLock.lock();
 		try {
-			int firstIdx = logs.firstKey();
-			if (firstIdx <= start) {
-				return new ArrayList<>(logs.subMap(start, end - 1).values());
+			int firstIdx = logs.firstIdx();
+			start = Math.max(start, startIdx);
+			List<LogEntry> res = new ArrayList<>(Math.max(0, Math.min(end, logs.lastIdx() + 1) - start));
+			if (start < firstIdx) {
+				res.addAll(logStorage.read(start, Math.min(end, firstIdx) - start));
 			}
-			List<LogEntry> res = new ArrayList<>(end - start);
-			res.addAll(logStorage.read(start, firstIdx - start));
-			res.addAll(logs.subMap(firstIdx, end - 1).values());
+			logs.range(start, end, res);
 			return res;
 		} finally {
 			readLock.unlock();
 		}
 	}
 
+	/**
+	 * 查找 idx 处日志所在任期的第一条日志
+	 *
+	 * @param idx
+	 *            索引
+	 * @return 该任期在本节点日志中的第一条日志索引
+	 */
+	public int firstIdxOfTerm(int idx) {
+		LogEntry logEntry = getLog(idx);
+		if (logEntry == null) {
+			return idx;
+		}
+		return lowerBound(logEntry.getTerm(), idx);
+	}
+
+	/**
+	 * 查找 idx 及之前任期为 term 的最后一条日志
+	 *
+	 * @param term
+	 *            任期
+	 * @param idx
+	 *            索引
+	 * @return 日志索引，不存在时返回 -1
+	 */
+	public int lastIdxOfTerm(long term, int idx) {
+		int lastIdx = lowerBound(term + 1, idx + 1) - 1;
+		LogEntry logEntry = getLog(lastIdx);
+		return logEntry != null && logEntry.getTerm() == term ? lastIdx : -1;
+	}
+
+	/**
+	 * 日志的任期单调不减，二分查找 [startIdx, end] 中第一条任期大于等于 term 的日志，已被删除的日志视为更小的任期
+	 *
+	 * @return 日志索引，都小于 term 时返回 end
+	 */
+	private int lowerBound(long term, int end) {
+		int lo = startIdx;
+		int hi = end;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			LogEntry logEntry = getLog(mid);
+			if (logEntry == null || logEntry.getTerm() < term) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/**
+	 * 累计写入的日志字节数
+	 *
+	 * @return 字节数，包括已被覆盖或删除的日志
+	 */
+	public long getAppendedBytes() {
+		return appendedBytes;
+	}
+
+	/**
+	 * 累计删除日志释放的存储字节数
+	 *
+	 * @return 字节数，由存储按删除的文件或记录计算
+	 */
+	public long getReclaimedBytes() {
+		return reclaimedBytes.get();
+	}
+
+	/**
+	 * 日志起始位置
+	 *
+	 * @return 小于该索引的日志已被快照覆盖并删除
+	 */
+	public int getStartIdx() {
+		return startIdx;
+	}
+
+	/**
+	 * 删除已被快照覆盖的日志，保留 applyIdx 处的日志用于一致性检查
+	 *
+	 * @param applyIdx
+	 *            快照的应用索引
+	 * @return 删除的日志条数
+	 */
+	public int truncatePrefix(int applyIdx) {
+		int origin;
+		int idx;
+		writeLock.lock();
+		try {
+			origin = startIdx;
+			idx = Math.min(Math.min(applyIdx, durableIdx), logs.lastIdx());
+			if (idx <= origin) {
+				return 0;
+			}
+			logs.truncatePrefix(idx);
+			startIdx = idx;
+		} finally {
+			writeLock.unlock();
+		}
+		long bytes = logStorage.truncatePrefix(idx);
+		reclaimedBytes.addAndGet(bytes);
+		log.debug("truncate logs before {}, origin start index: {}, reclaimed bytes: {}", idx, origin, bytes);
+		return idx - origin;
+	}
+
 	@Override
 	public String println() {
-		return logs.toString();
+		return "start: " + startIdx + ", durable: " + durableIdx + ", cache: " + logs;
 	}
 }
@@ -3,6 +3,7 @@ package com.gill.consensus.raftplus;
 import java.util.Objects;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import com.gill.consensus.raftplus.apis.MetaStorage;
@@ -30,6 +31,26 @@ public class MetaDataManager implements PrintService {
 
 	private final PersistentProperties properties = new PersistentProperties();
 
+	/**
+	 * properties 中 term 的副本，持有 writeLock 修改，读取时无锁
+	 */
+	private volatile long term = 0L;
+
+	/**
+	 * 修改次数，受 writeLock 保护
+	 */
+	private long version = 0;
+
+	/**
+	 * 已持久化的版本
+	 */
+	private volatile long durableVersion = 0;
+
+	/**
+	 * 组提交锁，持有者负责把最新的元数据写入 metaStorage
+	 */
+	private final Lock syncLock = new ReentrantLock();
+
 	public MetaDataManager(MetaStorage metaStorage) {
 		this.metaStorage = metaStorage;
 	}
@@ -38,7 +59,13 @@ public class MetaDataManager implements PrintService {
 	 * 初始化数据
 	 */
 	public void init() {
-		properties.set(metaStorage.read());
+		writeLock.lock();
+		try {
+			properties.set(metaStorage.read());
+			term = properties.getTerm();
+		} finally {
+			writeLock.unlock();
+		}
 	}
 
 	/**
@@ -47,12 +74,7 @@ public class MetaDataManager implements PrintService {
 	 * @return term
 	 */
 	public long getTerm() {
-		readLock.lock();
-		try {
-			return properties.getTerm();
-		} finally {
-			readLock.unlock();
-		}
+		return term;
 	}
 
 	/**
@@ -72,7 +94,7 @@ public class MetaDataManager implements PrintService {
 	}
 
 	/**
-	 * 任期增长
+	 * 任期增长，持久化后返回
 	 *
 	 * @param originTerm
 	 *            原任期
@@ -81,19 +103,22 @@ public class MetaDataManager implements PrintService {
 	 * @return 任期 -1 为失败
 	 */
 	public long increaseTerm(long originTerm, int votedFor) {
+		long target;
 		writeLock.lock();
 		try {
-			if(originTerm == properties.getTerm() && voteFor(originTerm + 1, votedFor)) {
-				return originTerm + 1;
+			if (originTerm != properties.getTerm() || !doVoteFor(originTerm + 1, votedFor)) {
+				return -1;
 			}
-			return -1;
+			target = version;
 		} finally {
 			writeLock.unlock();
 		}
+		persist(target);
+		return originTerm + 1;
 	}
 
 	/**
-	 * 投票
+	 * 投票，持久化后返回
 	 * 
 	 * @param term
 	 *            任期
@@ -102,37 +127,94 @@ public class MetaDataManager implements PrintService {
 	 * @return 是否成功投票
 	 */
 	public boolean voteFor(long term, int votedFor) {
+		boolean ret;
+		long target;
 		writeLock.lock();
 		try {
-			if (term > properties.getTerm()) {
-				properties.setTerm(term);
-				properties.setVotedFor(votedFor);
-				return true;
-			}
-			return term == properties.getTerm()
-					&& (properties.getVotedFor() == null || Objects.equals(votedFor, properties.getVotedFor()));
+			ret = doVoteFor(term, votedFor);
+			target = version;
 		} finally {
 			writeLock.unlock();
 		}
+		persist(target);
+		return ret;
+	}
+
+	private boolean doVoteFor(long term, int votedFor) {
+		if (term > properties.getTerm()) {
+			properties.setTerm(term);
+			properties.setVotedFor(votedFor);
+			this.term = term;
+			version++;
+			return true;
+		}
+		if (term != properties.getTerm()) {
+			return false;
+		}
+		if (properties.getVotedFor() == null) {
+
+			// 同一任期内只能投给一个节点，需要记录下来
+			properties.setVotedFor(votedFor);
+			version++;
+			return true;
+		}
+		return Objects.equals(votedFor, properties.getVotedFor());
 	}
 
 	/**
-	 * 接受了更高任期的消息
+	 * 接受了更高任期的消息，持久化后返回
 	 *
 	 * @param newTerm 任期
 	 */
 	public boolean acceptHigherOrSameTerm(long newTerm) {
+		boolean ret;
+		long target;
 		writeLock.lock();
 		try {
 			if (newTerm > properties.getTerm()) {
 				properties.setTerm(newTerm);
 				properties.setVotedFor(null);
-				return true;
+				term = newTerm;
+				version++;
 			}
-			return newTerm == properties.getTerm();
+			ret = newTerm == properties.getTerm();
+			target = version;
 		} finally {
 			writeLock.unlock();
 		}
+		persist(target);
+		return ret;
+	}
+
+	/**
+	 * 等待 target 版本及之前的修改持久化。并发的调用者由先拿到锁的线程写入最新的版本，合并为一次刷盘
+	 *
+	 * @param target
+	 *            版本
+	 */
+	private void persist(long target) {
+		if (durableVersion >= target) {
+			return;
+		}
+		syncLock.lock();
+		try {
+			if (durableVersion >= target) {
+				return;
+			}
+			PersistentProperties snapshot = new PersistentProperties();
+			long snapshotVersion;
+			readLock.lock();
+			try {
+				snapshot.set(properties);
+				snapshotVersion = version;
+			} finally {
+				readLock.unlock();
+			}
+			metaStorage.write(snapshot);
+			durableVersion = snapshotVersion;
+		} finally {
+			syncLock.unlock();
+		}
 	}
 
 	@Override
@@ -1,10 +1,12 @@
 package com.gill.consensus.raftplus;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
@@ -17,18 +19,24 @@ import com.gill.consensus.raftplus.apis.EmptyLogStorage;
 import com.gill.consensus.raftplus.apis.EmptyMetaStorage;
 import com.gill.consensus.raftplus.apis.LogStorage;
 import com.gill.consensus.raftplus.apis.MetaStorage;
+import com.gill.consensus.raftplus.apis.SnapshotReader;
 import com.gill.consensus.raftplus.config.RaftConfig;
 import com.gill.consensus.raftplus.entity.AppendLogEntriesParam;
 import com.gill.consensus.raftplus.entity.AppendLogReply;
 import com.gill.consensus.raftplus.entity.PreVoteParam;
 import com.gill.consensus.raftplus.entity.ReplicateSnapshotParam;
+import com.gill.consensus.raftplus.entity.ReplicateSnapshotReply;
 import com.gill.consensus.raftplus.entity.Reply;
 import com.gill.consensus.raftplus.entity.RequestVoteParam;
+import com.gill.consensus.raftplus.entity.SnapshotDigestParam;
+import com.gill.consensus.raftplus.entity.SnapshotDigestReply;
+import com.gill.consensus.raftplus.exception.ProposeException;
 import com.gill.consensus.raftplus.machine.RaftEvent;
 import com.gill.consensus.raftplus.machine.RaftEventParams;
 import com.gill.consensus.raftplus.machine.RaftMachine;
 import com.gill.consensus.raftplus.model.LogEntry;
 import com.gill.consensus.raftplus.model.PersistentProperties;
+import com.gill.consensus.raftplus.model.ProposeResult;
 import com.gill.consensus.raftplus.service.ClusterService;
 import com.gill.consensus.raftplus.service.InnerNodeService;
 import com.gill.consensus.raftplus.service.PrintService;
@@ -59,6 +67,16 @@ public class Node implements InnerNodeService, ClusterService, PrintService {
 
 	private final AtomicInteger committedIdx = new AtomicInteger(0);
 
+	/**
+	 * 从当前任期的 leader 得知的最大提交索引及其任期，受 lock 保护。心跳可能先于更早发出的日志批次到达，
+	 * 以此判断本节点的提交索引是否真正超前于 leader
+	 */
+	@Getter(AccessLevel.NONE)
+	private int leaderCommitIdx = 0;
+
+	@Getter(AccessLevel.NONE)
+	private long leaderCommitTerm = -1;
+
 	private final AtomicBoolean stable = new AtomicBoolean(false);
 
 	private final HeartbeatState heartbeatState = new HeartbeatState(0, 0);
@@ -83,7 +101,14 @@ public class Node implements InnerNodeService, ClusterService, PrintService {
 
 	private transient final LogManager logManager;
 
-	private final transient ProposeHelper proposeHelper = new ProposeHelper(threadPools::getApiPool);
+	@Getter(AccessLevel.NONE)
+	private transient final SnapshotInstaller snapshotInstaller = new SnapshotInstaller();
+
+	private transient final SnapshotScheduler snapshotScheduler = new SnapshotScheduler(this);
+
+	private final transient ProposeHelper proposeHelper = new ProposeHelper();
+
+	private final transient ApplyPipeline applyPipeline = new ApplyPipeline(this);
 
 	/**
 	 * 集群属性
@@ -139,8 +164,16 @@ public class Node implements InnerNodeService, ClusterService, PrintService {
 		return committedIdx.get();
 	}
 
+	/**
+	 * 推进提交索引，推进时唤醒应用线程
+	 *
+	 * @param committedIdx
+	 *            提交索引
+	 */
 	public void setCommittedIdx(int committedIdx) {
-		this.committedIdx.accumulateAndGet(committedIdx, Math::max);
+		if (this.committedIdx.getAndAccumulate(committedIdx, Math::max) < committedIdx) {
+			applyPipeline.wakeUp();
+		}
 	}
 
 	public boolean isStable() {
@@ -164,11 +197,8 @@ public class Node implements InnerNodeService, ClusterService, PrintService {
 			// 初始化数据
 			int applyIdx = initData();
 
-			// 初始化日志
+			// 初始化日志，快照之后的日志不一定已提交，得知提交索引后由 applyPipeline 应用
 			initLog(applyIdx);
-
-			// 应用未应用的日志
-			applyFrom(applyIdx + 1);
 		} finally {
 			lock.unlock();
 		}
@@ -193,18 +223,20 @@ public class Node implements InnerNodeService, ClusterService, PrintService {
 		log.debug("finish loading snapshot...");
 	}
 
-	private void applyFrom(int logIdx) {
-		Pair<Long, Integer> lastLog = logManager.lastLog();
-		if (lastLog == null) {
-			return;
-		}
-		int lastLogIdx = lastLog.getValue();
-		log.debug("applying logs from {} to {} ...", logIdx, lastLogIdx);
-		for (int i = logIdx; i <= lastLogIdx; i++) {
-			LogEntry logEntry = logManager.getLog(i);
-			dataStorage.apply(logEntry.getTerm(), logEntry.getIndex(), logEntry.getCommand());
+	/**
+	 * 保存快照到文件，快照已持久化时删除被快照覆盖的日志
+	 *
+	 * @return 快照的 applyIdx，未持久化时返回 -1
+	 */
+	public int saveSnapshot() {
+		int applyIdx = dataStorage.saveSnapshotToFile();
+		if (applyIdx < 0) {
+			log.info("node: {} snapshot is not persisted, keeps all logs", ID);
+			return -1;
 		}
-		log.debug("finish applying logs.");
+		int reclaimed = logManager.truncatePrefix(applyIdx);
+		log.info("node: {} saves snapshot at {}, reclaims {} logs", ID, applyIdx, reclaimed);
+		return applyIdx;
 	}
 
 	/**
@@ -266,8 +298,8 @@ public class Node implements InnerNodeService, ClusterService, PrintService {
 	}
 
 	private boolean unlatestLog(long lastLogTerm, long lastLogIdx) {
-		Pair<Long, Integer> pair = logManager.lastLog();
-		return lastLogTerm <= pair.getKey() && (lastLogTerm != pair.getKey() || lastLogIdx < pair.getValue());
+		LogEntry lastLog = logManager.lastLog();
+		return lastLogTerm <= lastLog.getTerm() && (lastLogTerm != lastLog.getTerm() || lastLogIdx < lastLog.getIndex());
 	}
 
 	@Override
@@ -349,6 +381,7 @@ public class Node implements InnerNodeService, ClusterService, PrintService {
 
 	@Override
 	public AppendLogReply doAppendLogEntries(AppendLogEntriesParam param) {
+		LogEntry lastNew;
 		lock.lock();
 		try {
 			long term = getTerm();
@@ -359,10 +392,12 @@ public class Node implements InnerNodeService, ClusterService, PrintService {
 			refreshLastHeartbeatTimestamp();
 			stepDown(pTerm, true);
 			stable();
+			learnLeaderCommit(pTerm, param.getCommitIdx());
 
-			// 没有logs属性的为ping请求
+			// 没有logs属性的为ping请求，携带的提交索引不超过本节点已与 leader 确认一致的日志
 			if (param.getLogs() == null || param.getLogs().isEmpty()) {
 				log.trace("node: {} receive heartbeat from {}", ID, param.getNodeId());
+				setCommittedIdx(Math.min(param.getCommitIdx(), logManager.lastLog().getIndex()));
 				return new AppendLogReply(true, pTerm);
 			}
 
@@ -373,67 +408,145 @@ public class Node implements InnerNodeService, ClusterService, PrintService {
 
 			// 如果当前节点的committedIdx 大于 leader的 committedIdx
 			// 说明当前节点的快照版本超前于 leader的版本，但一切以leader为准，因此需要重新同步快照信息
-			if (committedIdx > param.getCommitIdx()) {
+			if (committedIdx > leaderCommitIdx) {
 				return new AppendLogReply(false, pTerm, true);
 			}
 
-			Pair<Long, Integer> pair = logManager.lastLog();
-			long lastLogTerm = pair.getKey();
-			int lastLogIdx = pair.getValue();
+			int preLogIdx = param.getPreLogIdx();
+			int lastLogIdx = logManager.lastLog().getIndex();
+
+			// 本节点缺少 preLogIdx 处的日志，从本节点的下一个索引位置开始修复
+			if (lastLogIdx < preLogIdx) {
+				return new AppendLogReply(false, pTerm, -1, lastLogIdx + 1);
+			}
 
-			// 同步日志的其实索引不是本节点的下一个索引位置时，返回本节点的最后的日志索引，从该索引开始修复
-			if (lastLogIdx < param.getPreLogIdx()) {
-				return new AppendLogReply(false, pTerm, false, lastLogIdx);
+			// preLogIdx 处的日志已被本节点的快照覆盖，从日志起始位置之后开始修复
+			LogEntry preLog = logManager.getLog(preLogIdx);
+			if (preLog == null) {
+				return new AppendLogReply(false, pTerm, -1, logManager.getStartIdx() + 1);
 			}
 
-			// 如果版本不一致，批量从前 repairLength 的索引开始修复
-			if (lastLogTerm != param.getPreLogTerm()) {
-				return new AppendLogReply(false, pTerm, false, lastLogIdx - config.getRepairLength());
+			// 任期不一致，返回冲突的任期及该任期的第一条日志，leader 据此跳过整个任期
+			if (preLog.getTerm() != param.getPreLogTerm()) {
+				return new AppendLogReply(false, pTerm, preLog.getTerm(), logManager.firstIdxOfTerm(preLogIdx));
 			}
 
 			List<LogEntry> logs = param.getLogs();
 
-			// 记录日志
+			// 记录日志，持久化后才能响应
 			logs.forEach(logManager::appendLog);
+			lastNew = logs.get(logs.size() - 1);
+		} finally {
+			lock.unlock();
+		}
 
-			// 应用日志
-			for (int idx = committedIdx + 1; idx <= param.getCommitIdx(); idx++) {
-				LogEntry logEntry = logManager.getLog(idx);
-				dataStorage.apply(pTerm, idx, logEntry.getCommand());
-			}
+		// 在锁外刷盘，刷盘期间心跳和投票不被阻塞
+		int lastNewIdx = lastNew.getIndex();
+		logManager.sync(lastNewIdx);
+
+		// 刷盘期间日志被更高任期的 leader 覆盖时不能确认
+		long pTerm = param.getTerm();
+		LogEntry durable = logManager.getLog(lastNewIdx);
+		if (getTerm() != pTerm || durable == null || durable.getTerm() != lastNew.getTerm()) {
+			return new AppendLogReply(false, getTerm());
+		}
 
-			// 更新committedIdx
-			setCommittedIdx(param.getCommitIdx());
+		// 更新committedIdx，只确认本次收到的日志范围内的提交，由应用线程异步应用
+		setCommittedIdx(Math.min(param.getCommitIdx(), lastNewIdx));
+		refreshLastHeartbeatTimestamp();
+		return new AppendLogReply(true, pTerm);
+	}
+
+	private void learnLeaderCommit(long pTerm, int commitIdx) {
+		if (pTerm != leaderCommitTerm) {
+			leaderCommitTerm = pTerm;
+			leaderCommitIdx = commitIdx;
+		} else {
+			leaderCommitIdx = Math.max(leaderCommitIdx, commitIdx);
+		}
+	}
+
+	@Override
+	public ReplicateSnapshotReply doReplicateSnapshot(ReplicateSnapshotParam param) {
+		long pTerm = param.getTerm();
+		long nextOffset;
+		LogEntry applyLog = null;
+		lock.lock();
+		try {
+			log.debug("node: {} replicate snapshot from {}, term is {}, apply{idx={}, term={}}, offset: {}, len: {}",
+					ID, param.getNodeId(), param.getTerm(), param.getApplyIdx(), param.getApplyTerm(),
+					param.getOffset(), param.length());
+			long term = getTerm();
+			if (pTerm < term) {
+				return new ReplicateSnapshotReply(false, term);
+			}
 			refreshLastHeartbeatTimestamp();
-			return new AppendLogReply(true, pTerm);
+			stepDown(pTerm, true);
+
+			// 分块不连续时返回期望的偏移量，由leader续传
+			nextOffset = snapshotInstaller.write(dataStorage, param);
+			if (nextOffset != param.getOffset() + param.length()) {
+				return new ReplicateSnapshotReply(false, pTerm, nextOffset);
+			}
+			if (param.isDone()) {
+				applyLog = new LogEntry(param.getApplyIdx(), param.getApplyTerm(), "");
+				logManager.appendLog(applyLog);
+			}
 		} finally {
 			lock.unlock();
 		}
+		if (applyLog == null) {
+			return new ReplicateSnapshotReply(true, pTerm, nextOffset);
+		}
+
+		// 与追加日志相同，在锁外刷盘，刷盘期间日志被更高任期的 leader 覆盖时不能确认
+		int applyIdx = applyLog.getIndex();
+		logManager.sync(applyIdx);
+		LogEntry durable = logManager.getLog(applyIdx);
+		if (getTerm() != pTerm || durable == null || durable.getTerm() != applyLog.getTerm()) {
+			return new ReplicateSnapshotReply(false, getTerm());
+		}
+		setCommittedIdx(applyIdx);
+		return new ReplicateSnapshotReply(true, pTerm, nextOffset);
 	}
 
 	@Override
-	public Reply doReplicateSnapshot(ReplicateSnapshotParam param) {
+	public SnapshotDigestReply doSnapshotDigest(SnapshotDigestParam param) {
+		long pTerm = param.getTerm();
 		lock.lock();
 		try {
-			log.debug("node: {} replicate snapshot from {}, term is {}, apply{idx={}, term={}}", ID, param.getNodeId(),
-					param.getTerm(), param.getApplyIdx(), param.getApplyTerm());
-			long pTerm = param.getTerm();
 			long term = getTerm();
 			if (pTerm < term) {
-				return new Reply(false, term);
+				return new SnapshotDigestReply(false, term);
 			}
 			refreshLastHeartbeatTimestamp();
 			stepDown(pTerm, true);
-			long applyLogTerm = param.getApplyTerm();
-			int applyIdx = param.getApplyIdx();
-			byte[] data = param.getData();
-			dataStorage.saveSnapshot(applyLogTerm, applyIdx, data);
-			logManager.appendLog(new LogEntry(applyIdx, applyLogTerm, ""));
-			setCommittedIdx(applyIdx);
-			return new Reply(true, pTerm);
 		} finally {
 			lock.unlock();
 		}
+
+		// 摘要需要读取整个快照，在锁外计算，不阻塞日志复制和选举
+		SnapshotReader reader = dataStorage.openSnapshot();
+		byte[][] hashes;
+		try {
+			hashes = SnapshotInstaller.digest(reader, param.getChunkSize());
+		} catch (RuntimeException e) {
+			reader.close();
+			throw e;
+		}
+		lock.lock();
+		try {
+			long term = getTerm();
+			if (term != pTerm) {
+				reader.close();
+				return new SnapshotDigestReply(false, term);
+			}
+			snapshotInstaller.rebase(reader);
+		} finally {
+			lock.unlock();
+		}
+		log.debug("node: {} digests snapshot for {}, chunks: {}", ID, param.getNodeId(), hashes.length);
+		return new SnapshotDigestReply(true, pTerm, hashes);
 	}
 
 	@Override
@@ -443,7 +556,9 @@ public class Node implements InnerNodeService, ClusterService, PrintService {
 		calcPriority(null);
 		this.followers = nodes.stream().filter(node -> this != node).collect(Collectors.toList());
 		loadData();
+		this.applyPipeline.start();
 		this.publishEvent(RaftEvent.INIT, new RaftEventParams(getTerm(), true));
+		this.snapshotScheduler.start();
 	}
 
 	public synchronized void start(List<? extends Node> nodes, Integer priority) {
@@ -452,7 +567,9 @@ public class Node implements InnerNodeService, ClusterService, PrintService {
 		calcPriority(priority);
 		this.followers = nodes.stream().filter(node -> this != node).collect(Collectors.toList());
 		loadData();
+		this.applyPipeline.start();
 		this.publishEvent(RaftEvent.INIT, new RaftEventParams(getTerm(), true));
+		this.snapshotScheduler.start();
 	}
 
 	private void calcPriority(Integer priority) {
@@ -471,8 +588,10 @@ public class Node implements InnerNodeService, ClusterService, PrintService {
 
 	@Override
 	public synchronized void stop() {
+		this.snapshotScheduler.stop();
 		this.publishEvent(RaftEvent.STOP, new RaftEventParams(Integer.MAX_VALUE, true));
 		this.machine.stop();
+		this.applyPipeline.stop();
 	}
 
 	@Override
@@ -481,19 +600,39 @@ public class Node implements InnerNodeService, ClusterService, PrintService {
 	}
 
 	@Override
-	public int propose(String command) {
+	public int propose(byte[] command) {
 		if (!ready()) {
 			return -1;
 		}
-		log.debug("node: {} propose {}", ID, command);
-		LogEntry logEntry = logManager.createLog(getTerm(), command);
-		proposeHelper.propose(logEntry, () -> {
-			if (command != null) {
-				log.debug("data storage apply {} {}", logEntry.getIndex(), command);
-				dataStorage.apply(logEntry.getTerm(), logEntry.getIndex(), command);
-			}
-		});
-		return logEntry.getIndex();
+		log.debug("node: {} propose {} bytes", ID, command.length);
+		return proposeHelper.propose(command);
+	}
+
+	@Override
+	public CompletableFuture<ProposeResult> proposeAsync(byte[] command) {
+		if (!ready()) {
+			CompletableFuture<ProposeResult> future = new CompletableFuture<>();
+			future.completeExceptionally(new ProposeException("node " + ID + " is not ready"));
+			return future;
+		}
+		log.debug("node: {} propose {} bytes asynchronously", ID, command.length);
+		return proposeHelper.proposeAsync(command);
+	}
+
+	@Override
+	public List<CompletableFuture<ProposeResult>> proposeBatchAsync(List<byte[]> commands) {
+		if (!ready()) {
+			return ProposeHelper.failed(commands.size(), new ProposeException("node " + ID + " is not ready"));
+		}
+		log.debug("node: {} propose {} commands in batch", ID, commands.size());
+		return proposeHelper.proposeBatchAsync(commands);
+	}
+
+	@Override
+	public List<Integer> proposeBatch(List<String> commands) {
+		List<byte[]> payloads = commands.stream().map(command -> command.getBytes(StandardCharsets.UTF_8))
+				.collect(Collectors.toList());
+		return ProposeHelper.awaitIndexes(proposeBatchAsync(payloads));
 	}
 
 	@Override
@@ -532,6 +671,9 @@ public class Node implements InnerNodeService, ClusterService, PrintService {
 		sb.append("PROPOSE HELPER").append(System.lineSeparator());
 		sb.append(proposeHelper.println()).append(System.lineSeparator());
 		sb.append("===================").append(System.lineSeparator());
+		sb.append("APPLY PIPELINE").append(System.lineSeparator());
+		sb.append(applyPipeline.println()).append(System.lineSeparator());
+		sb.append("===================").append(System.lineSeparator());
 		sb.append("LOG MANAGER").append(System.lineSeparator());
 		sb.append(logManager.println()).append(System.lineSeparator());
 		sb.append("===================").append(System.lineSeparator());
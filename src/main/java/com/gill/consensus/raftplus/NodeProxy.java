@@ -1,31 +1,42 @@
 package com.gill.consensus.raftplus;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
-import com.gill.consensus.raftplus.apis.DataStorage;
+import com.gill.consensus.raftplus.apis.SnapshotReader;
+import com.gill.consensus.raftplus.common.LogEntryCodec;
 import com.gill.consensus.raftplus.common.Utils;
+import com.gill.consensus.raftplus.config.RaftConfig;
 import com.gill.consensus.raftplus.entity.AppendLogEntriesParam;
 import com.gill.consensus.raftplus.entity.AppendLogReply;
 import com.gill.consensus.raftplus.entity.ReplicateSnapshotParam;
-import com.gill.consensus.raftplus.entity.Reply;
+import com.gill.consensus.raftplus.entity.ReplicateSnapshotReply;
+import com.gill.consensus.raftplus.entity.SnapshotDigestParam;
+import com.gill.consensus.raftplus.entity.SnapshotDigestReply;
 import com.gill.consensus.raftplus.exception.SyncSnapshotException;
 import com.gill.consensus.raftplus.model.LogEntry;
-import com.gill.consensus.raftplus.model.Snapshot;
 import com.gill.consensus.raftplus.service.InnerNodeService;
 import com.gill.consensus.raftplus.service.PrintService;
 
+import lombok.AllArgsConstructor;
 import lombok.Getter;
-import lombok.Setter;
-import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -38,39 +49,155 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class NodeProxy implements Runnable, PrintService {
 
+	/**
+	 * 无日志可发送时最长挂起时间，新日志到达时会被提前唤醒
+	 */
 	private static final long TIMEOUT = 50L;
 
-	private static final int BATCH = 100;
+	/**
+	 * 一次快照同步中允许按 follower 期望的偏移量续传的次数
+	 */
+	private static final int MAX_RESUMES = 3;
 
 	private final Node self;
 
 	private final InnerNodeService follower;
 
-	private int preLogIdx;
+	/**
+	 * 已发送给 follower 的最大日志索引，只由复制线程更新，追加日志时据此计算队列积压
+	 */
+	private volatile int preLogIdx;
+
+	/**
+	 * follower 已确认与本节点一致的最大日志索引，只由复制线程更新
+	 */
+	private volatile int matchIdx = 0;
+
+	/**
+	 * 最近一次追加成功的批次的发送时间（毫秒），follower 收到该批次时已刷新选举超时
+	 */
+	private volatile long lastContact = 0;
+
+	/**
+	 * follower 已从追加请求中得知的提交索引
+	 */
+	private volatile int knownCommitIdx = 0;
+
+	/**
+	 * matchIdx 推进后的回调，由 leader 据此计算提交索引
+	 */
+	private final Runnable matchListener;
+
+	private final ConcurrentSkipListMap<Integer, LogEntry> logs = new ConcurrentSkipListMap<>();
+
+	/**
+	 * 积压超过上限时未放入队列的最大日志索引，复制追上之前从 LogManager 按批补读
+	 */
+	private final AtomicInteger shedIdx = new AtomicInteger();
 
-	private final ConcurrentSkipListMap<Integer, LogEntryReply> logs = new ConcurrentSkipListMap<>();
+	/**
+	 * 队列中日志的字节数
+	 */
+	private final AtomicLong queuedBytes = new AtomicLong();
 
 	private final ExecutorService executor;
 
+	/**
+	 * 按顺序发送追加请求，保证 follower 按发送顺序收到批次
+	 */
+	private final ExecutorService sender;
+
+	/**
+	 * 已发送未处理响应的批次，按发送顺序排列
+	 */
+	private final Deque<InFlight> inflight = new ArrayDeque<>();
+
+	private final ReplicateBatcher batcher;
+
+	/**
+	 * 开始等待凑批的时间和当时可发送的条数，0 表示未在等待
+	 */
+	private long lingerSince = 0;
+
+	private int lingerCount = 0;
+
+	/**
+	 * 等待凑批的截止时间，0 表示未在等待
+	 */
+	private long lingerDeadline = 0;
+
 	private volatile boolean running = true;
 
+	/**
+	 * 复制线程，appendLog 放入日志后唤醒
+	 */
+	private volatile Thread worker;
+
 	public NodeProxy(Node self, InnerNodeService follower, int lastLogIdx) {
+		this(self, follower, lastLogIdx, () -> {
+		});
+	}
+
+	public NodeProxy(Node self, InnerNodeService follower, int lastLogIdx, Runnable matchListener) {
 		this.self = self;
 		this.follower = follower;
 		this.preLogIdx = lastLogIdx;
+		this.matchListener = matchListener;
+		this.batcher = new ReplicateBatcher(self.getConfig().getBatchConfig());
 		this.executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(10),
 				r -> new Thread(r, "node-proxy-" + self.getID() + "-" + follower.getID()));
+		this.sender = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+				r -> new Thread(r, "node-proxy-sender-" + self.getID() + "-" + follower.getID()));
 	}
 
 	public int getID() {
 		return follower.getID();
 	}
 
+	public int getMatchIdx() {
+		return matchIdx;
+	}
+
+	public int getKnownCommitIdx() {
+		return knownCommitIdx;
+	}
+
+	/**
+	 * since 之后发送的追加请求是否已成功
+	 *
+	 * @param since
+	 *            时间（毫秒）
+	 * @return 是否成功联系过
+	 */
+	public boolean contactedSince(long since) {
+		return lastContact >= since;
+	}
+
+	/**
+	 * 复制落后的日志条数
+	 *
+	 * @return leader 最新日志索引与 matchIdx 之差
+	 */
+	public int getLag() {
+		return Math.max(0, self.getLogManager().lastLog().getIndex() - matchIdx);
+	}
+
+	public ReplicateBatcher getBatcher() {
+		return batcher;
+	}
+
 	@Override
 	public String println() {
 		StringBuilder sb = new StringBuilder();
 		sb.append("running: ").append(running).append(System.lineSeparator());
 		sb.append("preLogIdx: ").append(preLogIdx).append(System.lineSeparator());
+		sb.append("matchIdx: ").append(matchIdx).append(", lag: ").append(getLag()).append(", shedIdx: ")
+				.append(shedIdx.get()).append(", queued bytes: ").append(queuedBytes.get())
+				.append(System.lineSeparator());
+		sb.append("last contact: ").append(lastContact).append(", known commitIdx: ").append(knownCommitIdx)
+				.append(System.lineSeparator());
+		sb.append("inflight batches: ").append(inflight.size()).append(System.lineSeparator());
+		sb.append(batcher.println());
 		sb.append("waiting append logs: ").append(logs).append(System.lineSeparator());
 		return sb.toString();
 	}
@@ -90,68 +217,240 @@ public class NodeProxy implements Runnable, PrintService {
 		running = false;
 		this.executor.shutdownNow();
 		Utils.awaitTermination(this.executor, "proxy-" + self.getID() + "-" + follower.getID());
+		this.sender.shutdownNow();
+		Utils.awaitTermination(this.sender, "proxy-sender-" + self.getID() + "-" + follower.getID());
 	}
 
 	/**
-	 * 单线程运行，无并发问题
+	 * 单线程运行，无并发问题。最多 replicateWindow 个批次在途，发送后乐观地推进 preLogIdx，按发送顺序处理响应
 	 */
 	@Override
 	public void run() {
+		worker = Thread.currentThread();
+		int window = Math.max(1, self.getConfig().getReplicateWindow());
 		while (running) {
-			if (skip()) {
-				continue;
-			}
-			List<LogEntryReply> entries = pollSuccessiveLogs();
-			List<LogEntry> appendLogs = entries.stream().map(LogEntryReply::getLogEntry).collect(Collectors.toList());
 			try {
-				AppendLogReply reply = doAppendLogs(appendLogs);
-				if(handleReply(entries, reply)) {
+				if (completeHead() || (inflight.size() < window && sendNext())) {
 					continue;
 				}
-				putbackLogs(entries);
 			} catch (Exception e) {
 				log.error("node: {} appends logs to {} failed, e: {}", self.getID(), follower.getID(), e.getMessage());
-				putbackLogs(entries);
+				continue;
+			}
+			await(window);
+		}
+	}
+
+	/**
+	 * 先自旋等待，仍无事可做时挂起，直到 appendLog 或响应到达时唤醒
+	 */
+	private void await(int window) {
+		for (int i = self.getConfig().getReplicateSpins(); i > 0; i--) {
+			if (headDone() || (inflight.size() < window && sendable() && lingerDeadline == 0)) {
+				return;
 			}
 		}
+		long nanos = TimeUnit.MILLISECONDS.toNanos(TIMEOUT);
+		if (lingerDeadline != 0) {
+			nanos = Math.min(nanos, lingerDeadline - System.nanoTime());
+		}
+		if (nanos > 0) {
+			LockSupport.parkNanos(this, nanos);
+		}
 	}
 
-	private boolean skip() {
-		if (logs.isEmpty() || logs.firstKey() != preLogIdx + 1) {
+	private boolean headDone() {
+		InFlight head = inflight.peekFirst();
+		return head != null && head.getFuture().isDone();
+	}
+
+	/**
+	 * 发送下一批连续的日志，不等待响应
+	 *
+	 * @return 是否发送
+	 */
+	private boolean sendNext() {
+		dropCovered();
+		if (!sendable() && shedIdx.get() > preLogIdx && !refill()) {
+
+			// 被丢弃的日志已被快照覆盖，按需要同步快照处理
+			inflight.addLast(new InFlight(preLogIdx, Collections.emptyList(), -1, 0,
+					CompletableFuture.completedFuture(new AppendLogReply(false, self.getTerm(), true))));
+			return true;
+		}
+		if (!sendable()) {
+			lingerSince = 0;
+			lingerDeadline = 0;
+			return false;
+		}
+
+		// 统计可发送的连续日志，未凑满一批时按 linger 等待更多日志
+		int maxEntries = batcher.getMaxEntries();
+		long maxBytes = batcher.getMaxBytes();
+		int count = 0;
+		long size = 0;
+		boolean full = false;
+		int expect = preLogIdx + 1;
+		for (Map.Entry<Integer, LogEntry> entry : logs.tailMap(expect).entrySet()) {
+			if (entry.getKey() != expect) {
+				break;
+			}
+			int recordSize = LogEntryCodec.recordSize(entry.getValue());
+			if (count > 0 && size + recordSize > maxBytes) {
+				full = true;
+				break;
+			}
+			count++;
+			size += recordSize;
+			expect++;
+			if (count >= maxEntries || size >= maxBytes) {
+				full = true;
+				break;
+			}
+		}
+		long now = System.nanoTime();
+		if (lingerSince == 0) {
+			lingerSince = now;
+			lingerCount = count;
+		}
+		long delay = batcher.delay(full, now - lingerSince);
+		if (delay > 0) {
+			lingerDeadline = now + delay;
+			return false;
+		}
+		batcher.record(count, size, full, lingerDeadline != 0, count > lingerCount);
+		lingerSince = 0;
+		lingerDeadline = 0;
+
+		List<LogEntry> entries = pollSuccessiveLogs(count);
+		int pre = preLogIdx;
+		AppendLogEntriesParam param = buildParam(pre, entries);
+		CompletableFuture<AppendLogReply> future;
+		int commitIdx = -1;
+		if (param == null) {
+
+			// 前一条日志已被快照覆盖，需要先同步快照
+			future = CompletableFuture.completedFuture(new AppendLogReply(false, self.getTerm(), true));
+		} else {
+			log.debug("node: {} proposes to {}, logs: {}", self.getID(), follower.getID(), entries);
+			commitIdx = param.getCommitIdx();
 			try {
-				Thread.sleep(TIMEOUT);
-			} catch (InterruptedException ignored) {
+				future = CompletableFuture.supplyAsync(() -> follower.appendLogEntries(param), sender);
+			} catch (RejectedExecutionException e) {
+				putbackLogs(entries);
+				throw e;
 			}
+			future.whenComplete((reply, e) -> Optional.ofNullable(worker).ifPresent(LockSupport::unpark));
+		}
+		inflight.addLast(new InFlight(pre, entries, commitIdx, System.currentTimeMillis(), future));
+		preLogIdx = lastLogIdx(entries);
+		return true;
+	}
+
+	/**
+	 * 处理最早发送的批次的响应
+	 *
+	 * @return 是否处理
+	 */
+	private boolean completeHead() throws SyncSnapshotException {
+		if (!headDone()) {
+			return false;
+		}
+		InFlight head = inflight.pollFirst();
+		AppendLogReply reply;
+		try {
+			reply = head.getFuture().join();
+		} catch (CompletionException e) {
+			rewind(head);
+			throw e;
+		}
+		if (reply.isSuccess()) {
+			handleSuccess(head);
 			return true;
 		}
-		return false;
+		rewind(head);
+		handleFailure(reply);
+		return true;
+	}
+
+	/**
+	 * 批次失败后丢弃之后在途的批次，日志放回队列，preLogIdx 回退到失败批次之前
+	 */
+	private void rewind(InFlight failed) {
+		putbackLogs(failed.getEntries());
+		for (InFlight discard : inflight) {
+
+			// 等待已发出的请求结束，避免与修复日志的请求交错
+			discard.getFuture().handle((reply, e) -> reply).join();
+			putbackLogs(discard.getEntries());
+		}
+		inflight.clear();
+		preLogIdx = failed.getPreLogIdx();
+	}
+
+	/**
+	 * 队首是否为 preLogIdx 的下一条日志
+	 */
+	private boolean sendable() {
+		if (logs.isEmpty()) {
+			return false;
+		}
+		return logs.firstKey() == preLogIdx + 1;
+	}
+
+	/**
+	 * 丢弃 preLogIdx 及之前的日志，follower 已有这些日志，之后的批次追加成功即可确认
+	 */
+	private void dropCovered() {
+		while (!logs.isEmpty() && logs.firstKey() <= preLogIdx) {
+			pollFirst();
+		}
 	}
 
-	private List<LogEntryReply> pollSuccessiveLogs() {
-		List<LogEntryReply> entries = new ArrayList<>();
-		for (int i = 0, preIdx = preLogIdx; i < BATCH && !logs.isEmpty()
+	/**
+	 * 从 LogManager 补读一批因积压被丢弃的日志
+	 *
+	 * @return 日志已被快照覆盖时返回 false
+	 */
+	private boolean refill() {
+		LogManager logManager = self.getLogManager();
+		int from = preLogIdx + 1;
+		if (from < logManager.getStartIdx()) {
+			return false;
+		}
+		int to = Math.min(shedIdx.get(), from + batcher.getMaxEntries() - 1);
+		if (!logs.isEmpty()) {
+			to = Math.min(to, logs.firstKey() - 1);
+		}
+		for (LogEntry logEntry : logManager.getLogs(from, to + 1)) {
+			enqueue(logEntry);
+		}
+		return true;
+	}
+
+	private List<LogEntry> pollSuccessiveLogs(int count) {
+		List<LogEntry> entries = new ArrayList<>(count);
+		for (int i = 0, preIdx = preLogIdx; i < count && !logs.isEmpty()
 				&& logs.firstKey() == preIdx + 1; i++, preIdx++) {
-			entries.add(logs.pollFirstEntry().getValue());
+			entries.add(pollFirst());
 		}
 		return entries;
 	}
 
-	private AppendLogReply doAppendLogs(List<LogEntry> appendLogs) {
-		int nodeId = self.getID();
-		long term = self.getTerm();
-		long preLogTerm = self.getLogManager().getLog(preLogIdx).getTerm();
-		int committedIdx = self.getCommittedIdx();
-		AppendLogEntriesParam param = AppendLogEntriesParam.builder(nodeId, term).preLogTerm(preLogTerm)
-				.preLogIdx(preLogIdx).commitIdx(committedIdx).logs(appendLogs).build();
-		log.debug("node: {} proposes to {}, logs: {}", nodeId, follower.getID(), appendLogs);
-		return follower.appendLogEntries(param);
+	/**
+	 * 构造追加参数，前一条日志已被快照覆盖时返回 null
+	 */
+	private AppendLogEntriesParam buildParam(int pre, List<LogEntry> appendLogs) {
+		LogEntry preLog = self.getLogManager().getLog(pre);
+		if (preLog == null) {
+			return null;
+		}
+		return AppendLogEntriesParam.builder(self.getID(), self.getTerm()).preLogTerm(preLog.getTerm())
+				.preLogIdx(pre).commitIdx(self.getCommittedIdx()).logs(appendLogs).build();
 	}
 
-	private boolean handleReply(List<LogEntryReply> entries, AppendLogReply reply) throws SyncSnapshotException {
-		if (reply.isSuccess()) {
-			handleSuccess(entries, reply);
-			return true;
-		} else if (reply.getTerm() > self.getTerm()) {
+	private void handleFailure(AppendLogReply reply) throws SyncSnapshotException {
+		if (reply.getTerm() > self.getTerm()) {
 
 			// 服务端任期大于本机，则更新任期并降级为follower
 			self.stepDown(reply.getTerm());
@@ -162,106 +461,244 @@ public class NodeProxy implements Runnable, PrintService {
 		} else {
 
 			// 修复follower旧日志
-			repairOldLogs(reply.getCompareIdx());
+			repairOldLogs(compareIdx(reply));
 		}
-		return false;
 	}
 
-	private void handleSuccess(List<LogEntryReply> entries, AppendLogReply reply) {
-		int lastLogIdx = lastLogIdx(entries);
-		preLogIdx = lastLogIdx;
-		self.setCommittedIdx(lastLogIdx);
-		for (LogEntryReply entry : entries) {
-			entry.setReply(reply);
-			Optional.ofNullable(entry.getLatch()).ifPresent(CountDownLatch::countDown);
+	private void handleSuccess(InFlight head) {
+		int lastLogIdx = lastLogIdx(head.getEntries());
+		preLogIdx = Math.max(preLogIdx, lastLogIdx);
+		lastContact = Math.max(lastContact, head.getSentAt());
+		knownCommitIdx = Math.max(knownCommitIdx, Math.min(head.getCommitIdx(), lastLogIdx));
+		updateMatchIdx(lastLogIdx);
+	}
+
+	/**
+	 * 推进 matchIdx 并通知 leader，是否提交由 leader 按多数派的 matchIdx 决定
+	 */
+	private void updateMatchIdx(int idx) {
+		if (idx > matchIdx) {
+			matchIdx = idx;
+			matchListener.run();
 		}
 	}
 
 	private void syncSnapshot() throws SyncSnapshotException {
 		int nodeId = self.getID();
-		log.debug("node: {} sync snapshot to {}", nodeId, follower.getID());
-		DataStorage dataStorage = self.getDataStorage();
-		Snapshot snapshot = dataStorage.getSnapshot();
 		long term = self.getTerm();
-		long applyTerm = snapshot.getApplyTerm();
-		int applyIdx = snapshot.getApplyIdx();
-		byte[] data = snapshot.getData();
-		ReplicateSnapshotParam param = new ReplicateSnapshotParam(nodeId, term, applyIdx, applyTerm, data);
-		Reply reply = follower.replicateSnapshot(param);
-		if (!reply.isSuccess()) {
-			throw new SyncSnapshotException(
-					String.format("node: %s sync snapshot to %s failed, term: %s", nodeId, follower.getID(), term));
+		RaftConfig.SnapshotConfig config = self.getConfig().getSnapshotConfig();
+		int chunkSize = config.getChunkSize();
+		byte[][] hashes = config.isDeltaTransfer() ? followerDigest(term, chunkSize) : null;
+		int applyIdx;
+		try (SnapshotReader reader = self.getDataStorage().openSnapshot()) {
+			applyIdx = reader.getApplyIdx();
+			long applyTerm = reader.getApplyTerm();
+			long size = reader.size();
+			log.debug("node: {} sync snapshot to {}, apply{idx={}, term={}}, size: {}", nodeId, follower.getID(),
+					applyIdx, applyTerm, size);
+			long offset = 0;
+			long reused = 0;
+			int resumes = 0;
+			while (true) {
+				byte[] chunk = reader.read(offset, chunkSize);
+				boolean done = offset + chunk.length >= size;
+				boolean reuse = canReuse(hashes, offset, chunkSize, chunk);
+				ReplicateSnapshotParam param = reuse
+						? new ReplicateSnapshotParam(nodeId, term, applyIdx, applyTerm, offset, new byte[0],
+								chunk.length, done)
+						: new ReplicateSnapshotParam(nodeId, term, applyIdx, applyTerm, offset, chunk, done);
+				ReplicateSnapshotReply reply = follower.replicateSnapshot(param);
+				if (reply.isSuccess()) {
+					reused += reuse ? chunk.length : 0;
+					if (done) {
+						break;
+					}
+					offset += chunk.length;
+					continue;
+				}
+				if (reply.getTerm() > term) {
+					self.stepDown(reply.getTerm());
+				}
+
+				// follower 无法从自身快照补齐分块时退回全量发送
+				long nextOffset = reply.getNextOffset();
+				if (reuse && reply.getTerm() == term && nextOffset == offset) {
+					hashes = null;
+					continue;
+				}
+
+				// follower 已接收的位置与本次不一致时从 follower 期望的位置续传
+				if (reply.getTerm() != term || nextOffset < 0 || nextOffset > size || ++resumes > MAX_RESUMES) {
+					throw new SyncSnapshotException(
+							String.format("node: %s sync snapshot to %s failed, term: %s, offset: %s", nodeId,
+									follower.getID(), term, offset));
+				}
+				offset = nextOffset;
+			}
+			log.debug("node: {} sync snapshot to {} finished, size: {}, reused: {}", nodeId, follower.getID(), size,
+					reused);
 		}
+
+		// 快照已覆盖的日志视为复制成功，从快照之后继续同步
+		updateMatchIdx(applyIdx);
+		repairOldLogs(applyIdx);
+	}
+
+	/**
+	 * 获取 follower 当前快照的分块摘要，失败时返回 null 并退回全量同步
+	 */
+	private byte[][] followerDigest(long term, int chunkSize) {
+		try {
+			SnapshotDigestReply reply = follower.snapshotDigest(new SnapshotDigestParam(self.getID(), term, chunkSize));
+			if (reply.isSuccess()) {
+				return reply.getHashes();
+			}
+			if (reply.getTerm() > term) {
+				self.stepDown(reply.getTerm());
+			}
+		} catch (Exception e) {
+			log.warn("node: {} gets snapshot digest from {} failed, e: {}", self.getID(), follower.getID(),
+					e.getMessage());
+		}
+		return null;
+	}
+
+	private static boolean canReuse(byte[][] hashes, long offset, int chunkSize, byte[] chunk) {
+		if (hashes == null || chunk.length == 0 || offset % chunkSize != 0) {
+			return false;
+		}
+		long idx = offset / chunkSize;
+		return idx < hashes.length && Arrays.equals(hashes[(int) idx], SnapshotInstaller.hash(chunk));
+	}
+
+	/**
+	 * 根据 follower 返回的冲突信息计算双方一致的位置：leader 有冲突任期的日志时从该任期的最后一条开始比较，否则跳过 follower 的整个冲突任期
+	 */
+	private int compareIdx(AppendLogReply reply) {
+		int conflictIdx = reply.getConflictIdx();
+		if (reply.getConflictTerm() < 0) {
+			return conflictIdx - 1;
+		}
+		int lastIdx = self.getLogManager().lastIdxOfTerm(reply.getConflictTerm(), preLogIdx);
+		return lastIdx >= 0 ? lastIdx : conflictIdx - 1;
 	}
 
 	private void repairOldLogs(int compareIdx) throws SyncSnapshotException {
 		if (compareIdx < 0) {
 			return;
 		}
-		DataStorage dataStorage = self.getDataStorage();
 
-		// 如果compareIdx小于 snapshot 的 applyIdx说明同步的日志可能已被删除，直接同步快照
-		if (compareIdx < dataStorage.getApplyIdx()) {
+		// 如果compareIdx小于日志的起始位置说明同步的日志已被快照覆盖删除，直接同步快照
+		LogManager logManager = self.getLogManager();
+		if (compareIdx < logManager.getStartIdx()) {
 			syncSnapshot();
 			return;
 		}
 		log.debug("node: {} repair logs to {}, compare idx: {}", self.getID(), follower.getID(), compareIdx);
 
 		// 从日志中获取compareIdx到队列第一个元素的所有日志
-		LogManager logManager = self.getLogManager();
-		int endIdx = Optional.ofNullable(logs.firstKey()).orElse(Integer.MAX_VALUE);
+		int endIdx = logs.isEmpty() ? Integer.MAX_VALUE : logs.firstKey();
 		List<LogEntry> entries = logManager.getLogs(compareIdx + 1, endIdx);
 		for (LogEntry logEntry : entries) {
-			int logIdx = logEntry.getIndex();
-			LogEntryReply entry = new LogEntryReply(null, logEntry);
-			logs.put(logIdx, entry);
+			enqueue(logEntry);
 		}
 		preLogIdx = compareIdx;
 	}
 
-	private void putbackLogs(List<LogEntryReply> entries) {
-		for (LogEntryReply entry : entries) {
-			logs.put(entry.getLogEntry().getIndex(), entry);
-		}
-	}
+	@Getter
+	@AllArgsConstructor
+	private static class InFlight {
 
-	private static int lastLogIdx(List<LogEntryReply> appendLogs) {
-		return appendLogs.get(appendLogs.size() - 1).getLogEntry().getIndex();
-	}
+		/**
+		 * 发送时的 preLogIdx
+		 */
+		final int preLogIdx;
 
-	@Getter
-	@Setter
-	@ToString
-	private static class LogEntryReply {
+		final List<LogEntry> entries;
 
-		final CountDownLatch latch;
+		/**
+		 * 请求携带的提交索引，-1 表示未发送
+		 */
+		final int commitIdx;
 
-		final LogEntry logEntry;
+		/**
+		 * 发送时间（毫秒）
+		 */
+		final long sentAt;
 
-		AppendLogReply reply;
+		final CompletableFuture<AppendLogReply> future;
+	}
 
-		public LogEntryReply(CountDownLatch latch, LogEntry logEntry) {
-			this.latch = latch;
-			this.logEntry = logEntry;
+	private void putbackLogs(List<LogEntry> entries) {
+		for (LogEntry entry : entries) {
+			enqueue(entry);
 		}
 	}
 
+	private void enqueue(LogEntry logEntry) {
+		LogEntry old = logs.put(logEntry.getIndex(), logEntry);
+		queuedBytes.addAndGet(LogEntryCodec.recordSize(logEntry) - (old == null ? 0 : LogEntryCodec.recordSize(old)));
+	}
+
+	private LogEntry pollFirst() {
+		LogEntry logEntry = logs.pollFirstEntry().getValue();
+		queuedBytes.addAndGet(-LogEntryCodec.recordSize(logEntry));
+		return logEntry;
+	}
+
+	private static int lastLogIdx(List<LogEntry> appendLogs) {
+		return appendLogs.get(appendLogs.size() - 1).getIndex();
+	}
+
 	/**
-	 * 追加日志
+	 * 追加日志，只放入发送队列并唤醒复制线程，不等待 follower 响应。follower 确认后通过 matchIdx 反映复制进度
 	 * 
 	 * @param logEntry
 	 *            日志
-	 * @return 是否成功
 	 */
-	public AppendLogReply appendLog(LogEntry logEntry) {
-		CountDownLatch latch = new CountDownLatch(1);
-		LogEntryReply entry = new LogEntryReply(latch, logEntry);
-		try {
-			logs.put(logEntry.getIndex(), entry);
-			latch.await();
-		} catch (InterruptedException e) {
-			log.warn("appendLog interrupted, e: {}", e.toString());
+	public void appendLog(LogEntry logEntry) {
+		if (!shed(logEntry.getIndex(), LogEntryCodec.recordSize(logEntry))) {
+			enqueue(logEntry);
+		}
+		Optional.ofNullable(worker).ifPresent(LockSupport::unpark);
+	}
+
+	/**
+	 * 批量追加连续的日志，全部放入发送队列后只唤醒一次复制线程
+	 *
+	 * @param logEntries
+	 *            日志
+	 */
+	public void appendLogs(List<LogEntry> logEntries) {
+		long bytes = 0;
+		for (LogEntry logEntry : logEntries) {
+			bytes += LogEntryCodec.recordSize(logEntry);
+		}
+		if (!shed(lastLogIdx(logEntries), bytes)) {
+			for (LogEntry logEntry : logEntries) {
+				enqueue(logEntry);
+			}
+		}
+		Optional.ofNullable(worker).ifPresent(LockSupport::unpark);
+	}
+
+	/**
+	 * 尚未发送的日志条数或字节数超过上限时不再放入队列，只记录索引，避免慢节点的队列无限增长。条数从 preLogIdx 计算，
+	 * 新 leader 的 matchIdx 从 0 开始，按 matchIdx 计算会把所有新日志都当成积压
+	 *
+	 * @param lastIdx
+	 *            追加的最后一条日志索引
+	 * @param bytes
+	 *            追加的日志字节数
+	 * @return 是否丢弃
+	 */
+	private boolean shed(int lastIdx, long bytes) {
+		RaftConfig config = self.getConfig();
+		if (lastIdx - preLogIdx <= config.getFollowerBacklogEntries()
+				&& queuedBytes.get() + bytes <= config.getFollowerBacklogBytes()) {
+			return false;
 		}
-		return entry.getReply();
+		shedIdx.accumulateAndGet(lastIdx, Math::max);
+		return true;
 	}
 }
@@ -1,19 +1,32 @@
 package com.gill.consensus.raftplus;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.locks.LockSupport;
-import java.util.function.Supplier;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 import com.gill.consensus.raftplus.common.Utils;
-import com.gill.consensus.raftplus.entity.AppendLogReply;
-import com.gill.consensus.raftplus.entity.Reply;
+import com.gill.consensus.raftplus.config.RaftConfig;
+import com.gill.consensus.raftplus.exception.OverloadedException;
+import com.gill.consensus.raftplus.exception.ProposeException;
 import com.gill.consensus.raftplus.model.LogEntry;
+import com.gill.consensus.raftplus.model.ProposeResult;
 import com.gill.consensus.raftplus.service.InnerNodeService;
 import com.gill.consensus.raftplus.service.PrintService;
 
@@ -23,6 +36,11 @@ import lombok.extern.slf4j.Slf4j;
 
 /**
  * ProposeHelper
+ * <p>
+ * 每个 follower 的 NodeProxy 只负责推进自己的 matchIdx，leader 取包括自身已持久化索引在内的多数派中位数作为提交索引，
+ * 已提交的日志由 {@link ApplyPipeline} 按顺序应用后完成对应提案的 future。提案线程只负责生成日志，持久化、复制和应用都不占用提案线程
+ * <p>
+ * 已生成但尚未应用的提案按条数和字节数限流，超过上限时直接以 {@link OverloadedException} 拒绝或在超时时间内等待
  *
  * @author gill
  * @version 2023/09/11
@@ -30,16 +48,64 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class ProposeHelper implements PrintService {
 
+	/**
+	 * 同步提案等待提交的最长时间，与原先多数派调用的超时时间一致
+	 */
+	private static final long PROPOSE_TIMEOUT = 500L;
+
 	private final ConcurrentSkipListMap<Integer, WaitLogEntry> proposeQueue = new ConcurrentSkipListMap<>();
 
+	/**
+	 * 生成日志和登记提案在同一把锁内完成，保证日志被应用时对应的提案已登记
+	 */
+	private final Lock createLock = new ReentrantLock();
+
 	private List<NodeProxy> followerProxies = Collections.emptyList();
 
-	private final Supplier<ExecutorService> apiPoolSupplier;
+	private volatile Node node;
+
+	/**
+	 * 本地持久化日志后交给各个 NodeProxy 复制，单线程执行，并发提案由 LogManager 合并为一次刷盘
+	 */
+	private volatile ExecutorService syncExecutor;
+
+	/**
+	 * 因复制流量已覆盖而省去的心跳次数
+	 */
+	private final AtomicLong suppressedHeartbeats = new AtomicLong();
+
+	/**
+	 * 已准入但尚未应用或失败的提案条数
+	 */
+	private final AtomicInteger pendingEntries = new AtomicInteger();
+
+	/**
+	 * 已准入但尚未应用或失败的提案命令字节数
+	 */
+	private final AtomicLong pendingBytes = new AtomicLong();
+
+	/**
+	 * 因超过上限被拒绝的提案条数
+	 */
+	private final AtomicLong rejectedProposals = new AtomicLong();
+
+	private final Lock admissionLock = new ReentrantLock();
+
+	private final Condition admissionReleased = admissionLock.newCondition();
+
+	/**
+	 * 等待准入的线程数，为 0 时释放额度无需加锁唤醒
+	 */
+	private final AtomicInteger admissionWaiters = new AtomicInteger();
 
 	@Override
 	public String println() {
 		StringBuilder sb = new StringBuilder();
 		sb.append("propose queue: ").append(proposeQueue).append(System.lineSeparator());
+		sb.append("pending entries: ").append(pendingEntries.get()).append(", pending bytes: ")
+				.append(pendingBytes.get()).append(", rejected: ").append(rejectedProposals.get())
+				.append(System.lineSeparator());
+		sb.append("suppressed heartbeats: ").append(suppressedHeartbeats.get()).append(System.lineSeparator());
 		sb.append("followerProxies: ").append(System.lineSeparator());
 		for (NodeProxy proxy : followerProxies) {
 			sb.append(proxy.println());
@@ -51,18 +117,25 @@ public class ProposeHelper implements PrintService {
 	@ToString
 	private static class WaitLogEntry {
 
-		private final Thread thread;
-
 		private final LogEntry logEntry;
 
-		public WaitLogEntry(Thread thread, LogEntry logEntry) {
-			this.thread = thread;
-			this.logEntry = logEntry;
+		@ToString.Exclude
+		private final CompletableFuture<ProposeResult> future = new CompletableFuture<>();
+
+		/**
+		 * 完成后释放准入额度，保证只释放一次
+		 */
+		private boolean done(ProposeHelper helper) {
+			if (helper.proposeQueue.remove(logEntry.getIndex(), this)) {
+				helper.release(1, logEntry.getPayload().length);
+				return true;
+			}
+			return false;
 		}
-	}
 
-	public ProposeHelper(Supplier<ExecutorService> apiPoolSupplier) {
-		this.apiPoolSupplier = apiPoolSupplier;
+		public WaitLogEntry(LogEntry logEntry) {
+			this.logEntry = logEntry;
+		}
 	}
 
 	/**
@@ -76,10 +149,13 @@ public class ProposeHelper implements PrintService {
 	 *            日志索引
 	 */
 	public void start(Node node, List<InnerNodeService> followers, int preLogIdx) {
-		List<NodeProxy> proxies = followers.stream().map(follower -> new NodeProxy(node, follower, preLogIdx))
+		List<NodeProxy> proxies = followers.stream()
+				.map(follower -> new NodeProxy(node, follower, preLogIdx, this::updateCommitIdx))
 				.collect(Collectors.toList());
 		proxies.forEach(NodeProxy::start);
 		followerProxies = proxies;
+		syncExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "propose-sync-" + node.getID()));
+		this.node = node;
 	}
 
 	/**
@@ -88,50 +164,385 @@ public class ProposeHelper implements PrintService {
 	public void clear() {
 		List<NodeProxy> proxies = followerProxies;
 		followerProxies = Collections.emptyList();
+		node = null;
 		log.info("start to clear propose helper's proxies");
 		CompletableFuture<?>[] futures = proxies.stream().map(proxy -> CompletableFuture.runAsync(proxy::stop))
 				.toArray(CompletableFuture[]::new);
 		CompletableFuture.allOf(futures).join();
+		ExecutorService executor = syncExecutor;
+		syncExecutor = null;
+		if (executor != null) {
+			executor.shutdown();
+			Utils.awaitTermination(executor, "propose-sync");
+		}
+
+		// 已不是leader，未提交的提案不会再由本节点提交，之后由 follower 的流程应用
+		createLock.lock();
+		try {
+			ProposeException e = new ProposeException("leader stepped down before the log was committed");
+			for (WaitLogEntry wait : proposeQueue.values()) {
+				if (wait.done(this)) {
+					wait.getFuture().completeExceptionally(e);
+				}
+			}
+		} finally {
+			createLock.unlock();
+		}
 		log.info("finish clearing propose helper's proxies");
 	}
 
 	/**
-	 * propose
-	 * 
-	 * @param logEntry
-	 *            日志
-	 * @return 是否成功
-	 */
-	public int propose(LogEntry logEntry, Runnable dataStorageApplier) {
-		int logIdx = logEntry.getIndex();
-		proposeQueue.put(logIdx, new WaitLogEntry(Thread.currentThread(), logEntry));
-		boolean success = Utils.majorityCall(followerProxies, proxy -> {
-			AppendLogReply reply = new AppendLogReply(false, -1);
+	 * 按多数派的 matchIdx 推进提交索引，leader 自身以已持久化的索引计入。只直接提交当前任期的日志，之前任期的日志随之间接提交
+	 */
+	void updateCommitIdx() {
+		Node self = node;
+		if (self == null) {
+			return;
+		}
+		List<NodeProxy> proxies = followerProxies;
+		int[] matchIdxes = new int[proxies.size() + 1];
+		matchIdxes[0] = self.getLogManager().getDurableIdx();
+		for (int i = 0; i < proxies.size(); i++) {
+			matchIdxes[i + 1] = proxies.get(i).getMatchIdx();
+		}
+		int quorumIdx = quorumIdx(matchIdxes);
+		if (quorumIdx <= self.getCommittedIdx()) {
+			return;
+		}
+		LogEntry logEntry = self.getLogManager().getLog(quorumIdx);
+		if (logEntry == null || logEntry.getTerm() != self.getTerm()) {
+			return;
+		}
+		self.setCommittedIdx(quorumIdx);
+	}
+
+	/**
+	 * 心跳携带的提交索引，不超过该 follower 已确认一致的日志，follower 收到后可直接推进提交索引
+	 *
+	 * @param followerId
+	 *            follower
+	 * @return min(提交索引, follower 的 matchIdx)，没有对应的 NodeProxy 时返回 0
+	 */
+	public int heartbeatCommitIdx(int followerId) {
+		Node self = node;
+		if (self == null) {
+			return 0;
+		}
+		for (NodeProxy proxy : followerProxies) {
+			if (proxy.getID() == followerId) {
+				return Math.min(self.getCommittedIdx(), proxy.getMatchIdx());
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * 判断本轮是否可以省去发往 follower 的心跳：interval 内发送的追加请求已成功，follower 的选举超时已被刷新，
+	 * 且 follower 已从追加请求中得知本次心跳要携带的提交索引
+	 *
+	 * @param followerId
+	 *            follower id
+	 * @param interval
+	 *            心跳间隔（毫秒）
+	 * @return 是否省去心跳
+	 */
+	public boolean suppressHeartbeat(int followerId, long interval) {
+		Node self = node;
+		if (self == null) {
+			return false;
+		}
+		long since = System.currentTimeMillis() - interval;
+		for (NodeProxy proxy : followerProxies) {
+			if (proxy.getID() == followerId) {
+				int commitIdx = Math.min(self.getCommittedIdx(), proxy.getMatchIdx());
+				if (proxy.contactedSince(since) && proxy.getKnownCommitIdx() >= commitIdx) {
+					suppressedHeartbeats.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		}
+		return false;
+	}
+
+	public long getSuppressedHeartbeats() {
+		return suppressedHeartbeats.get();
+	}
+
+	/**
+	 * 多数派中位数：排序后第 (n / 2 + 1) 大的值，即至少多数节点都已具有的最大日志索引
+	 *
+	 * @param matchIdxes
+	 *            各节点的 matchIdx，会被排序
+	 * @return 多数派已复制的日志索引
+	 */
+	static int quorumIdx(int[] matchIdxes) {
+		Arrays.sort(matchIdxes);
+		return matchIdxes[(matchIdxes.length - 1) / 2];
+	}
+
+	/**
+	 * 日志应用后完成对应的提案，同一索引的日志已被其他任期覆盖时提案失败
+	 *
+	 * @param logEntries
+	 *            已应用的日志
+	 * @param results
+	 *            应用结果
+	 */
+	void onApplied(List<LogEntry> logEntries, List<String> results) {
+		if (proposeQueue.isEmpty()) {
+			return;
+		}
+		for (int i = 0; i < logEntries.size(); i++) {
+			LogEntry logEntry = logEntries.get(i);
+			WaitLogEntry wait = proposeQueue.get(logEntry.getIndex());
+			if (wait == null || !wait.done(this)) {
+				continue;
+			}
+			if (wait.getLogEntry().getTerm() == logEntry.getTerm()) {
+				wait.getFuture().complete(new ProposeResult(logEntry.getIndex(), results.get(i)));
+			} else {
+				wait.getFuture().completeExceptionally(new ProposeException(
+						"log " + logEntry.getIndex() + " was overwritten by term " + logEntry.getTerm()));
+			}
+		}
+	}
+
+	/**
+	 * 异步提案，future 在日志提交并应用后完成，回调在应用线程中执行
+	 *
+	 * @param command
+	 *            命令
+	 * @return 日志索引和应用结果，不是 leader、持久化失败或 leader 卸任时异常完成
+	 */
+	public CompletableFuture<ProposeResult> proposeAsync(byte[] command) {
+		return proposeBatchAsync(Collections.singletonList(command)).get(0);
+	}
+
+	/**
+	 * 批量异步提案，在一次加锁内分配连续的索引，整批日志一次持久化、一次放入各个 NodeProxy
+	 *
+	 * @param commands
+	 *            命令
+	 * @return 与 commands 一一对应的 future，超过上限时以 {@link OverloadedException} 异常完成
+	 */
+	public List<CompletableFuture<ProposeResult>> proposeBatchAsync(List<byte[]> commands) {
+		if (commands.isEmpty()) {
+			return Collections.emptyList();
+		}
+		Node leader = node;
+		if (leader == null) {
+			return failed(commands.size(), new ProposeException("node is not the leader"));
+		}
+		int n = commands.size();
+		long bytes = 0;
+		for (byte[] command : commands) {
+			bytes += command.length;
+		}
+		try {
+			admit(n, bytes, leader.getConfig().getAdmissionConfig());
+		} catch (OverloadedException e) {
+			return failed(n, e);
+		}
+		List<WaitLogEntry> waits = new ArrayList<>(n);
+		List<LogEntry> logEntries;
+		boolean parallel = leader.getConfig().isParallelPersist();
+		createLock.lock();
+		try {
+			Node self = node;
+			ExecutorService executor = syncExecutor;
+			if (self == null || executor == null) {
+				release(n, bytes);
+				return failed(n, new ProposeException("node is not the leader"));
+			}
+			logEntries = self.getLogManager().createLogs(self.getTerm(), commands);
+			for (LogEntry logEntry : logEntries) {
+				WaitLogEntry wait = new WaitLogEntry(logEntry);
+				proposeQueue.put(logEntry.getIndex(), wait);
+				waits.add(wait);
+			}
 			try {
-				reply = proxy.appendLog(logEntry);
-				return reply;
-			} catch (Exception e) {
-				log.error("call propose to {} failed, logEntry: {}, e: {}", proxy.getID(), logEntry, e.getMessage());
+				executor.execute(() -> persistAndReplicate(self, logEntries, waits, !parallel));
+			} catch (RejectedExecutionException e) {
+				fail(waits, new ProposeException("propose helper is stopping", e));
+			}
+		} finally {
+			createLock.unlock();
+		}
+
+		// 并行模式下不等本地刷盘，发送与写盘重叠，提交仍要求多数派（leader 以已持久化的索引计票）
+		if (parallel) {
+			for (NodeProxy proxy : followerProxies) {
+				proxy.appendLogs(logEntries);
+			}
+		}
+		return waits.stream().map(WaitLogEntry::getFuture).collect(Collectors.toList());
+	}
+
+	/**
+	 * 本地持久化，replicate 为 true 时持久化后再交给各个 NodeProxy 复制，单节点集群持久化后即可提交
+	 */
+	private void persistAndReplicate(Node self, List<LogEntry> logEntries, List<WaitLogEntry> waits,
+			boolean replicate) {
+		int lastIdx = logEntries.get(logEntries.size() - 1).getIndex();
+		try {
+			self.getLogManager().sync(lastIdx);
+		} catch (Exception e) {
+			log.error("node: {} persists logs to {} failed, e: {}", self.getID(), lastIdx, e.getMessage());
+			fail(waits, e);
+			return;
+		}
+		if (replicate) {
+			for (NodeProxy proxy : followerProxies) {
+				proxy.appendLogs(logEntries);
 			}
-			log.error("call propose to {} failed, logEntry: {}, reply: {}", proxy.getID(), logEntry, reply);
-			return reply;
-		}, Reply::isSuccess, apiPoolSupplier.get(), "propose");
-		if (success) {
-			int count = 0;
-			while (proposeQueue.firstKey() != logIdx) {
-				if (count++ >= 16) {
-					LockSupport.park();
+		}
+		updateCommitIdx();
+	}
+
+	private void fail(List<WaitLogEntry> waits, Throwable e) {
+		for (WaitLogEntry wait : waits) {
+			wait.done(this);
+			wait.getFuture().completeExceptionally(e);
+		}
+	}
+
+	/**
+	 * 申请准入额度。没有未完成的提案时总是准入，避免超过上限的单个批次永远无法提交
+	 *
+	 * @param n
+	 *            条数
+	 * @param bytes
+	 *            字节数
+	 * @param config
+	 *            配置
+	 * @throws OverloadedException
+	 *             超时仍超过上限
+	 */
+	private void admit(int n, long bytes, RaftConfig.AdmissionConfig config) {
+		if (tryAdmit(n, bytes, config)) {
+			return;
+		}
+		long nanos = TimeUnit.MILLISECONDS.toNanos(config.getAdmissionTimeout());
+		if (nanos > 0) {
+			admissionLock.lock();
+			admissionWaiters.incrementAndGet();
+			try {
+				while (nanos > 0) {
+					if (tryAdmit(n, bytes, config)) {
+						return;
+					}
+					nanos = admissionReleased.awaitNanos(nanos);
 				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				admissionWaiters.decrementAndGet();
+				admissionLock.unlock();
+			}
+		}
+		rejectedProposals.addAndGet(n);
+		throw new OverloadedException(String.format("too many pending proposals, entries: %s, bytes: %s",
+				pendingEntries.get(), pendingBytes.get()));
+	}
+
+	private boolean tryAdmit(int n, long bytes, RaftConfig.AdmissionConfig config) {
+		int entries = pendingEntries.addAndGet(n);
+		long size = pendingBytes.addAndGet(bytes);
+		if (entries == n || (entries <= config.getMaxPendingEntries() && size <= config.getMaxPendingBytes())) {
+			return true;
+		}
+		release(n, bytes);
+		return false;
+	}
+
+	private void release(int n, long bytes) {
+		pendingEntries.addAndGet(-n);
+		pendingBytes.addAndGet(-bytes);
+		if (admissionWaiters.get() > 0) {
+			admissionLock.lock();
+			try {
+				admissionReleased.signalAll();
+			} finally {
+				admissionLock.unlock();
+			}
+		}
+	}
+
+	public int getPendingEntries() {
+		return pendingEntries.get();
+	}
+
+	public long getPendingBytes() {
+		return pendingBytes.get();
+	}
+
+	public long getRejectedProposals() {
+		return rejectedProposals.get();
+	}
+
+	/**
+	 * 各 follower 复制落后的日志条数
+	 *
+	 * @return follower id 到落后条数
+	 */
+	public Map<Integer, Integer> getReplicationLags() {
+		Map<Integer, Integer> lags = new LinkedHashMap<>();
+		for (NodeProxy proxy : followerProxies) {
+			lags.put(proxy.getID(), proxy.getLag());
+		}
+		return lags;
+	}
+
+	static List<CompletableFuture<ProposeResult>> failed(int n, ProposeException e) {
+		List<CompletableFuture<ProposeResult>> futures = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			CompletableFuture<ProposeResult> future = new CompletableFuture<>();
+			future.completeExceptionally(e);
+			futures.add(future);
+		}
+		return futures;
+	}
+
+	/**
+	 * 同步提案，等待日志提交并应用
+	 * 
+	 * @param command
+	 *            命令
+	 * @return 日志索引，失败或超时返回 -1
+	 */
+	public int propose(byte[] command) {
+		return awaitIndexes(Collections.singletonList(proposeAsync(command))).get(0);
+	}
+
+	/**
+	 * 等待提案完成，整批共用一个超时时间
+	 *
+	 * @param futures
+	 *            提案
+	 * @return 与 futures 一一对应的日志索引，失败或超时为 -1
+	 */
+	public static List<Integer> awaitIndexes(List<CompletableFuture<ProposeResult>> futures) {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(PROPOSE_TIMEOUT);
+		List<Integer> indexes = new ArrayList<>(futures.size());
+		int failed = 0;
+		Throwable cause = null;
+		for (CompletableFuture<ProposeResult> future : futures) {
+			int idx = -1;
+			try {
+				idx = future.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS).getIndex();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				cause = e;
+			} catch (ExecutionException | TimeoutException e) {
+				cause = e;
 			}
-			dataStorageApplier.run();
-		} else {
-			log.warn("propose failed, logEntry: {}", logEntry);
+			failed += idx < 0 ? 1 : 0;
+			indexes.add(idx);
 		}
-		proposeQueue.remove(logIdx);
-		Map.Entry<Integer, WaitLogEntry> nextEntry = proposeQueue.firstEntry();
-		if (nextEntry != null) {
-			LockSupport.unpark(nextEntry.getValue().getThread());
+		if (failed > 0) {
+			log.warn("propose failed, count: {}/{}, e: {}", failed, futures.size(), String.valueOf(cause));
 		}
-		return success ? logIdx : -1;
+		return indexes;
 	}
 }
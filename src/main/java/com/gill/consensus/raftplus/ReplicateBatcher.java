@@ -0,0 +1,172 @@
+package com.gill.consensus.raftplus;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.gill.consensus.raftplus.config.RaftConfig;
+import com.gill.consensus.raftplus.service.PrintService;
+
+/**
+ * ReplicateBatcher 复制批次的大小与等待策略
+ * <p>
+ * 每批日志受条数和字节数限制。未凑满一批时最多等待 linger 时长再发送：批次因达到上限被截断说明负载较高，linger 加倍（不超过配置的上限）；
+ * 等待到期仍未凑满说明负载较低，linger 减半。linger 为 0 时立即发送。只由复制线程修改，统计可在其他线程读取
+ *
+ * @author gill
+ * @version 2023/09/20
+ **/
+public class ReplicateBatcher implements PrintService {
+
+	/**
+	 * 批次条数直方图的桶数，第 i 个桶统计条数在 [2^i, 2^(i+1)) 的批次
+	 */
+	private static final int HISTOGRAM_BUCKETS = 16;
+
+	private final RaftConfig.BatchConfig config;
+
+	private volatile long lingerNanos = 0;
+
+	private final AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+	private final LongAdder batches = new LongAdder();
+
+	private final LongAdder entries = new LongAdder();
+
+	private final LongAdder bytes = new LongAdder();
+
+	private final LongAdder fullBatches = new LongAdder();
+
+	private final LongAdder lingers = new LongAdder();
+
+	private final LongAdder lingerHits = new LongAdder();
+
+	public ReplicateBatcher(RaftConfig.BatchConfig config) {
+		this.config = config;
+	}
+
+	public int getMaxEntries() {
+		return Math.max(1, config.getMaxEntries());
+	}
+
+	public long getMaxBytes() {
+		return Math.max(1, config.getMaxBytes());
+	}
+
+	/**
+	 * 计算发送前还需等待的时长
+	 *
+	 * @param full
+	 *            待发送的日志是否已凑满一批
+	 * @param waitedNanos
+	 *            已等待的时长
+	 * @return 纳秒，小于等于 0 表示立即发送
+	 */
+	public long delay(boolean full, long waitedNanos) {
+		if (full) {
+			return 0;
+		}
+		return lingerNanos - waitedNanos;
+	}
+
+	/**
+	 * 记录一次发送并调整 linger
+	 *
+	 * @param count
+	 *            条数
+	 * @param size
+	 *            字节数
+	 * @param full
+	 *            是否达到上限
+	 * @param lingered
+	 *            是否等待过
+	 * @param grew
+	 *            等待期间是否有新日志加入
+	 */
+	public void record(int count, long size, boolean full, boolean lingered, boolean grew) {
+		batches.increment();
+		entries.add(count);
+		bytes.add(size);
+		histogram.incrementAndGet(Math.min(HISTOGRAM_BUCKETS - 1, 31 - Integer.numberOfLeadingZeros(count)));
+		if (lingered) {
+			lingers.increment();
+			if (grew) {
+				lingerHits.increment();
+			}
+		}
+		long max = TimeUnit.MICROSECONDS.toNanos(config.getMaxLingerMicros());
+		if (full) {
+			fullBatches.increment();
+			long step = TimeUnit.MICROSECONDS.toNanos(config.getLingerStepMicros());
+			lingerNanos = Math.min(max, Math.max(step, lingerNanos * 2));
+		} else if (lingered) {
+			lingerNanos = lingerNanos / 2;
+		}
+	}
+
+	/**
+	 * 当前等待时长
+	 *
+	 * @return 微秒
+	 */
+	public long getLingerMicros() {
+		return TimeUnit.NANOSECONDS.toMicros(lingerNanos);
+	}
+
+	/**
+	 * 批次条数直方图
+	 *
+	 * @return 第 i 项为条数在 [2^i, 2^(i+1)) 的批次数
+	 */
+	public long[] getHistogram() {
+		long[] result = new long[HISTOGRAM_BUCKETS];
+		for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+			result[i] = histogram.get(i);
+		}
+		return result;
+	}
+
+	public long getBatches() {
+		return batches.sum();
+	}
+
+	public long getEntries() {
+		return entries.sum();
+	}
+
+	public long getBytes() {
+		return bytes.sum();
+	}
+
+	public long getFullBatches() {
+		return fullBatches.sum();
+	}
+
+	/**
+	 * 等待过的批次中，等待期间有新日志加入的比例
+	 *
+	 * @return 命中率
+	 */
+	public double getLingerHitRate() {
+		long total = lingers.sum();
+		return total == 0 ? 0 : (double) lingerHits.sum() / total;
+	}
+
+	@Override
+	public String println() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("batches: ").append(getBatches()).append(", entries: ").append(getEntries()).append(", bytes: ")
+				.append(getBytes()).append(", full: ").append(getFullBatches()).append(System.lineSeparator());
+		sb.append("linger: ").append(getLingerMicros()).append("us, lingered: ").append(lingers.sum())
+				.append(", hit rate: ").append(String.format("%.2f", getLingerHitRate()))
+				.append(System.lineSeparator());
+		sb.append("batch size histogram: ");
+		for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+			long n = histogram.get(i);
+			if (n > 0) {
+				sb.append('[').append(1 << i).append(", ").append(1 << (i + 1)).append("): ").append(n).append(' ');
+			}
+		}
+		return sb.append(System.lineSeparator()).toString();
+	}
+}
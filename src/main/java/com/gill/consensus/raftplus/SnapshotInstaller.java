@@ -0,0 +1,166 @@
+package com.gill.consensus.raftplus;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.gill.consensus.raftplus.apis.DataStorage;
+import com.gill.consensus.raftplus.apis.SnapshotReader;
+import com.gill.consensus.raftplus.apis.SnapshotWriter;
+import com.gill.consensus.raftplus.entity.ReplicateSnapshotParam;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * SnapshotInstaller follower 端正在接收的快照，按偏移量顺序写入分块，调用方负责加锁
+ * <p>
+ * 增量同步时先通过 {@link #digest(SnapshotReader, int)} 在锁外计算本地快照的摘要，再通过 {@link #rebase(SnapshotReader)}
+ * 将其固定为基准，leader 对摘要相同的分块只发送长度，由基准快照补齐
+ *
+ * @author gill
+ * @version 2023/09/20
+ **/
+@Slf4j
+class SnapshotInstaller {
+
+	private SnapshotWriter writer;
+
+	private int applyIdx;
+
+	private long applyTerm;
+
+	private long nextOffset;
+
+	/**
+	 * 增量同步的基准快照，计算摘要时打开，安装完成或重新计算摘要时关闭
+	 */
+	private SnapshotReader base;
+
+	/**
+	 * 计算分块摘要
+	 *
+	 * @param chunk
+	 *            分块
+	 * @return SHA-256
+	 */
+	static byte[] hash(byte[] chunk) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(chunk);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * 以当前快照为基准，计算每个分块的摘要
+	 *
+	 * @param dataStorage
+	 *            数据存储
+	 * @param chunkSize
+	 *            分块大小
+	 * @return 分块摘要
+	 */
+	byte[][] digest(DataStorage dataStorage, int chunkSize) {
+		SnapshotReader reader = dataStorage.openSnapshot();
+		byte[][] hashes = digest(reader, chunkSize);
+		rebase(reader);
+		return hashes;
+	}
+
+	/**
+	 * 计算每个分块的摘要，不访问安装状态，无需加锁
+	 *
+	 * @param reader
+	 *            快照
+	 * @param chunkSize
+	 *            分块大小
+	 * @return 分块摘要
+	 */
+	static byte[][] digest(SnapshotReader reader, int chunkSize) {
+		List<byte[]> hashes = new ArrayList<>();
+		long size = reader.size();
+		for (long offset = 0; offset < size; offset += chunkSize) {
+			hashes.add(hash(reader.read(offset, chunkSize)));
+		}
+		return hashes.toArray(new byte[0][]);
+	}
+
+	/**
+	 * 替换增量同步的基准快照
+	 *
+	 * @param reader
+	 *            已计算摘要的快照
+	 */
+	void rebase(SnapshotReader reader) {
+		closeBase();
+		base = reader;
+	}
+
+	/**
+	 * 写入分块。分块属于新的快照时丢弃正在接收的快照；偏移量不连续或无法从基准快照补齐时不写入
+	 *
+	 * @param dataStorage
+	 *            数据存储
+	 * @param param
+	 *            分块
+	 * @return 期望的下一个分块偏移量，等于 offset + length 表示写入成功
+	 */
+	long write(DataStorage dataStorage, ReplicateSnapshotParam param) {
+		boolean same = writer != null && applyIdx == param.getApplyIdx() && applyTerm == param.getApplyTerm();
+		if (!same) {
+			abort();
+			if (param.getOffset() != 0) {
+				return 0;
+			}
+			applyIdx = param.getApplyIdx();
+			applyTerm = param.getApplyTerm();
+			nextOffset = 0;
+			writer = dataStorage.createSnapshotWriter(applyTerm, applyIdx);
+		} else if (param.getOffset() != nextOffset) {
+			return nextOffset;
+		}
+		byte[] data = param.getData();
+		if (param.getReuseLength() > 0) {
+			data = base == null ? null : base.read(param.getOffset(), param.getReuseLength());
+			if (data == null || data.length != param.getReuseLength()) {
+				return nextOffset;
+			}
+		}
+		try {
+			writer.write(data);
+			nextOffset += data.length;
+			if (param.isDone()) {
+				writer.finish();
+				log.info("install snapshot finished, apply{idx={}, term={}}, size: {}", applyIdx, applyTerm,
+						nextOffset);
+				long size = nextOffset;
+				abort();
+				closeBase();
+				return size;
+			}
+		} catch (RuntimeException e) {
+			abort();
+			throw e;
+		}
+		return nextOffset;
+	}
+
+	/**
+	 * 丢弃正在接收的快照
+	 */
+	void abort() {
+		if (writer != null) {
+			writer.close();
+			writer = null;
+		}
+		nextOffset = 0;
+	}
+
+	private void closeBase() {
+		if (base != null) {
+			base.close();
+			base = null;
+		}
+	}
+}
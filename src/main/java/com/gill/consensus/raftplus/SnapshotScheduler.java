@@ -0,0 +1,188 @@
+package com.gill.consensus.raftplus;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.gill.consensus.raftplus.common.Utils;
+import com.gill.consensus.raftplus.config.RaftConfig;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * SnapshotScheduler 按策略自动保存快照并删除被覆盖的日志
+ * <p>
+ * 在独立线程上定期检查：距上次快照的日志条数、日志字节数、时长，任一达到阈值即保存快照；应用速率过高时推迟按时长触发的快照。
+ * 不占用复制和心跳线程
+ *
+ * @author gill
+ * @version 2023/09/20
+ **/
+@Slf4j
+public class SnapshotScheduler {
+
+	private final Node node;
+
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * 上次快照覆盖的日志索引
+	 */
+	private volatile int lastSnapshotIdx;
+
+	/**
+	 * 上次快照时累计写入的日志字节数
+	 */
+	private volatile long lastSnapshotBytes;
+
+	private volatile long lastSnapshotTime;
+
+	/**
+	 * 上次检查时的提交索引和时间，用于计算应用速率
+	 */
+	private int lastCheckIdx;
+
+	private long lastCheckTime;
+
+	@Getter
+	private volatile long snapshotCount = 0;
+
+	/**
+	 * 最近一次快照的耗时（毫秒）
+	 */
+	@Getter
+	private volatile long lastCost = 0;
+
+	/**
+	 * 最近一次快照删除的日志条数
+	 */
+	@Getter
+	private volatile int lastReclaimed = 0;
+
+	@Getter
+	private volatile long totalReclaimed = 0;
+
+	/**
+	 * 最近一次快照释放的日志存储字节数
+	 */
+	@Getter
+	private volatile long lastReclaimedBytes = 0;
+
+	@Getter
+	private volatile long totalReclaimedBytes = 0;
+
+	public SnapshotScheduler(Node node) {
+		this.node = node;
+	}
+
+	/**
+	 * 启动定时检查
+	 */
+	public synchronized void start() {
+		stop();
+		RaftConfig.SnapshotConfig config = node.getConfig().getSnapshotConfig();
+		if (config.getCheckInterval() <= 0) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		lastSnapshotIdx = Math.max(node.getLogManager().getStartIdx(), 0);
+		lastSnapshotBytes = node.getLogManager().getAppendedBytes();
+		lastSnapshotTime = now;
+		lastCheckIdx = node.getCommittedIdx();
+		lastCheckTime = now;
+		scheduler = new ScheduledThreadPoolExecutor(1, r -> new Thread(r, "snapshot-" + node.getID()));
+		scheduler.scheduleWithFixedDelay(this::check, config.getCheckInterval(), config.getCheckInterval(),
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 停止定时检查
+	 */
+	public synchronized void stop() {
+		ScheduledExecutorService tmp = scheduler;
+		scheduler = null;
+		if (tmp != null) {
+			tmp.shutdownNow();
+			Utils.awaitTermination(tmp, "snapshotScheduler");
+		}
+	}
+
+	private void check() {
+		try {
+			String reason = trigger(node.getConfig().getSnapshotConfig(), System.currentTimeMillis());
+			if (reason != null) {
+				snapshot(reason);
+			}
+		} catch (Exception e) {
+			log.error("node: {} auto snapshot failed, e: {}", node.getID(), e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * 判断是否需要保存快照
+	 *
+	 * @return 触发原因，不需要时返回 null
+	 */
+	String trigger(RaftConfig.SnapshotConfig config, long now) {
+		int committedIdx = node.getCommittedIdx();
+		long applyRate = now > lastCheckTime ? (committedIdx - lastCheckIdx) * 1000L / (now - lastCheckTime) : 0;
+		lastCheckIdx = committedIdx;
+		lastCheckTime = now;
+
+		int entries = committedIdx - lastSnapshotIdx;
+		if (entries <= 0) {
+			return null;
+		}
+		if (config.getLogEntries() > 0 && entries >= config.getLogEntries()) {
+			return "entries: " + entries;
+		}
+		long bytes = node.getLogManager().getAppendedBytes() - lastSnapshotBytes;
+		if (config.getLogBytes() > 0 && bytes >= config.getLogBytes()) {
+			return "bytes: " + bytes;
+		}
+		long elapsed = now - lastSnapshotTime;
+		if (config.getInterval() > 0 && elapsed >= config.getInterval()) {
+			if (config.getBusyApplyRate() > 0 && applyRate > config.getBusyApplyRate()) {
+				log.debug("node: {} defers snapshot, apply rate: {}/s", node.getID(), applyRate);
+				return null;
+			}
+			return "elapsed: " + elapsed + "ms";
+		}
+		return null;
+	}
+
+	/**
+	 * 保存快照并记录耗时、删除的日志条数和释放的字节数
+	 *
+	 * @param reason
+	 *            触发原因
+	 * @return 删除的日志条数
+	 */
+	public synchronized int snapshot(String reason) {
+		LogManager logManager = node.getLogManager();
+		int startIdx = logManager.getStartIdx();
+		long reclaimedBytes = logManager.getReclaimedBytes();
+		long bytes = logManager.getAppendedBytes();
+		long start = System.currentTimeMillis();
+		int applyIdx = node.saveSnapshot();
+		long end = System.currentTimeMillis();
+		int reclaimed = Math.max(0, logManager.getStartIdx() - startIdx);
+		reclaimedBytes = logManager.getReclaimedBytes() - reclaimedBytes;
+
+		// 记录快照实际覆盖的索引，未持久化时从当前应用索引重新计数，避免每次检查都重复保存
+		lastSnapshotIdx = applyIdx >= 0 ? applyIdx : node.getDataStorage().getApplyIdx();
+		lastSnapshotBytes = bytes;
+		lastSnapshotTime = end;
+		lastCost = end - start;
+		lastReclaimed = reclaimed;
+		totalReclaimed += reclaimed;
+		lastReclaimedBytes = reclaimedBytes;
+		totalReclaimedBytes += reclaimedBytes;
+		snapshotCount++;
+		log.info(
+				"node: {} auto snapshot triggered by {}, cost: {}ms, reclaims {} logs ({} bytes), total reclaimed: {} logs ({} bytes)",
+				node.getID(), reason, lastCost, reclaimed, reclaimedBytes, totalReclaimed, totalReclaimedBytes);
+		return reclaimed;
+	}
+}
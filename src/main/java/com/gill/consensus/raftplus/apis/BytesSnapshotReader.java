@@ -0,0 +1,47 @@
+package com.gill.consensus.raftplus.apis;
+
+import java.util.Arrays;
+
+import com.gill.consensus.raftplus.model.Snapshot;
+
+/**
+ * BytesSnapshotReader 从内存中的快照读取分块
+ *
+ * @author gill
+ * @version 2023/09/20
+ **/
+public class BytesSnapshotReader implements SnapshotReader {
+
+	private final Snapshot snapshot;
+
+	public BytesSnapshotReader(Snapshot snapshot) {
+		this.snapshot = snapshot;
+	}
+
+	@Override
+	public long getApplyTerm() {
+		return snapshot.getApplyTerm();
+	}
+
+	@Override
+	public int getApplyIdx() {
+		return snapshot.getApplyIdx();
+	}
+
+	@Override
+	public long size() {
+		return snapshot.getData().length;
+	}
+
+	@Override
+	public byte[] read(long offset, int len) {
+		byte[] data = snapshot.getData();
+		int from = (int) Math.min(offset, data.length);
+		return Arrays.copyOfRange(data, from, (int) Math.min((long) from + len, data.length));
+	}
+
+	@Override
+	public void close() {
+
+	}
+}
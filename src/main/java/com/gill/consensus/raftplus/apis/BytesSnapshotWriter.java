@@ -0,0 +1,42 @@
+package com.gill.consensus.raftplus.apis;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * BytesSnapshotWriter 在内存中拼接分块，完成后通过 {@link DataStorage#saveSnapshot(long, int, byte[])} 安装
+ *
+ * @author gill
+ * @version 2023/09/20
+ **/
+public class BytesSnapshotWriter implements SnapshotWriter {
+
+	private final DataStorage dataStorage;
+
+	private final long applyTerm;
+
+	private final int applyIdx;
+
+	private ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+	public BytesSnapshotWriter(DataStorage dataStorage, long applyTerm, int applyIdx) {
+		this.dataStorage = dataStorage;
+		this.applyTerm = applyTerm;
+		this.applyIdx = applyIdx;
+	}
+
+	@Override
+	public void write(byte[] chunk) {
+		out.write(chunk, 0, chunk.length);
+	}
+
+	@Override
+	public void finish() {
+		dataStorage.saveSnapshot(applyTerm, applyIdx, out.toByteArray());
+		out = new ByteArrayOutputStream();
+	}
+
+	@Override
+	public void close() {
+		out = null;
+	}
+}
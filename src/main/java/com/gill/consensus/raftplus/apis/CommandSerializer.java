@@ -15,14 +15,14 @@ public interface CommandSerializer<T> {
 	 *            命令
 	 * @return 序列化的命令
 	 */
-	String serialize(T command);
+	byte[] serialize(T command);
 
 	/**
 	 * 反序列化 command
 	 * 
-	 * @param commandStr
-	 *            str
+	 * @param data
+	 *            序列化的命令
 	 * @return command
 	 */
-	T deserialize(String commandStr);
+	T deserialize(byte[] data);
 }
@@ -1,5 +1,10 @@
 package com.gill.consensus.raftplus.apis;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.gill.consensus.raftplus.model.LogEntry;
 import com.gill.consensus.raftplus.model.Snapshot;
 import com.gill.consensus.raftplus.service.PrintService;
 
@@ -34,8 +39,19 @@ public interface DataStorage extends PrintService {
 
 	/**
 	 * 保存数据
+	 *
+	 * @return 已持久化的快照的 applyIdx，未持久化时返回 -1，此时不能删除被快照覆盖的日志
+	 */
+	int saveSnapshotToFile();
+
+	/**
+	 * 在后台保存快照，默认在公共线程池中调用 {@link #saveSnapshotToFile()}
+	 *
+	 * @return 已持久化的快照的 applyIdx，未持久化时返回 -1
 	 */
-	void saveSnapshotToFile();
+	default CompletableFuture<Integer> saveSnapshotToFileAsync() {
+		return CompletableFuture.supplyAsync(this::saveSnapshotToFile);
+	}
 
 	/**
 	 * 保存快照
@@ -49,6 +65,28 @@ public interface DataStorage extends PrintService {
 	 */
 	void saveSnapshot(long applyTerm, int applyIdx, byte[] data);
 
+	/**
+	 * 打开当前快照用于分块读取，默认实现读取 {@link #getSnapshot()} 的完整数据
+	 *
+	 * @return 快照读取器
+	 */
+	default SnapshotReader openSnapshot() {
+		return new BytesSnapshotReader(getSnapshot());
+	}
+
+	/**
+	 * 创建用于接收分块的快照写入器，默认实现在内存中拼接后调用 {@link #saveSnapshot(long, int, byte[])}
+	 *
+	 * @param applyTerm
+	 *            日志任期
+	 * @param applyIdx
+	 *            日志idx
+	 * @return 快照写入器
+	 */
+	default SnapshotWriter createSnapshotWriter(long applyTerm, int applyIdx) {
+		return new BytesSnapshotWriter(this, applyTerm, applyIdx);
+	}
+
 	/**
 	 * 应用命令
 	 * 
@@ -58,6 +96,22 @@ public interface DataStorage extends PrintService {
 	 *            日志索引
 	 * @param command
 	 *            命令
+	 * @return 应用结果，未应用或 no-op 日志返回 null
+	 */
+	String apply(long logTerm, int logIdx, byte[] command);
+
+	/**
+	 * 按索引顺序批量应用已提交的日志，默认逐条调用 {@link #apply(long, int, byte[])}
+	 *
+	 * @param logEntries
+	 *            连续的日志
+	 * @return 与 logEntries 一一对应的应用结果
 	 */
-	void apply(long logTerm, int logIdx, String command);
+	default List<String> applyBatch(List<LogEntry> logEntries) {
+		List<String> results = new ArrayList<>(logEntries.size());
+		for (LogEntry logEntry : logEntries) {
+			results.add(apply(logEntry.getTerm(), logEntry.getIndex(), logEntry.getPayload()));
+		}
+		return results;
+	}
 }
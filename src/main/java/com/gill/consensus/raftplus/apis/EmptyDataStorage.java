@@ -10,11 +10,6 @@ import com.gill.consensus.raftplus.model.Snapshot;
  **/
 public class EmptyDataStorage extends VersionDataStorage {
 
-	@Override
-	public int getApplyIdx() {
-		return 0;
-	}
-
 	@Override
 	public byte[] getSnapshotData() {
 		return new byte[0];
@@ -27,8 +22,8 @@ public class EmptyDataStorage extends VersionDataStorage {
 	
 
 	@Override
-	public void saveSnapshotToFile(Snapshot snapshot) {
-
+	public boolean saveSnapshotToFile(Snapshot snapshot) {
+		return false;
 	}
 
 	@Override
@@ -37,7 +32,7 @@ public class EmptyDataStorage extends VersionDataStorage {
 	}
 
 	@Override
-	public String apply(String command) {
+	public String apply(byte[] command) {
 		return "";
 	}
 
@@ -27,4 +27,9 @@ public class EmptyLogStorage implements LogStorage {
 	public List<LogEntry> read(int start, int len) {
 		return Collections.emptyList();
 	}
+
+	@Override
+	public boolean readable() {
+		return false;
+	}
 }
@@ -31,6 +31,16 @@ public interface LogStorage {
 	 */
 	void write(LogEntry logEntry);
 
+	/**
+	 * 批量写日志，返回前整批日志需已持久化
+	 *
+	 * @param logEntries
+	 *            连续的日志
+	 */
+	default void write(List<LogEntry> logEntries) {
+		logEntries.forEach(this::write);
+	}
+
 	/**
 	 * 读日志
 	 * 
@@ -40,4 +50,33 @@ public interface LogStorage {
 	 *            个数
 	 */
 	List<LogEntry> read(int start, int len);
+
+	/**
+	 * 存储中第一条日志的索引，LogManager 初始化时只加载最新的日志，更早的日志按需从存储读取
+	 *
+	 * @return 第一条日志的索引，未知或没有日志时返回 -1
+	 */
+	default int firstIdx() {
+		return -1;
+	}
+
+	/**
+	 * 是否能读回已写入的日志，不能时 LogManager 不会把日志淘汰出内存
+	 *
+	 * @return 是否可读
+	 */
+	default boolean readable() {
+		return true;
+	}
+
+	/**
+	 * 删除 idx 之前已被快照覆盖的日志
+	 *
+	 * @param idx
+	 *            保留的第一条日志索引
+	 * @return 释放的存储字节数
+	 */
+	default long truncatePrefix(int idx) {
+		return 0;
+	}
 }
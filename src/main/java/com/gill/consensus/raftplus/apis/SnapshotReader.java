@@ -0,0 +1,50 @@
+package com.gill.consensus.raftplus.apis;
+
+import java.io.Closeable;
+
+/**
+ * SnapshotReader 按偏移量分块读取快照
+ *
+ * @author gill
+ * @version 2023/09/20
+ **/
+public interface SnapshotReader extends Closeable {
+
+	/**
+	 * 快照最后一条日志的任期
+	 *
+	 * @return 任期
+	 */
+	long getApplyTerm();
+
+	/**
+	 * 快照最后一条日志的索引
+	 *
+	 * @return 索引
+	 */
+	int getApplyIdx();
+
+	/**
+	 * 快照数据的总字节数
+	 *
+	 * @return 字节数
+	 */
+	long size();
+
+	/**
+	 * 读取一个分块
+	 *
+	 * @param offset
+	 *            偏移量
+	 * @param len
+	 *            最大长度
+	 * @return 分块数据，到达末尾时长度小于 len
+	 */
+	byte[] read(long offset, int len);
+
+	/**
+	 * 释放资源
+	 */
+	@Override
+	void close();
+}
@@ -0,0 +1,31 @@
+package com.gill.consensus.raftplus.apis;
+
+import java.io.Closeable;
+
+/**
+ * SnapshotWriter 按顺序写入快照分块，全部写入后再安装
+ *
+ * @author gill
+ * @version 2023/09/20
+ **/
+public interface SnapshotWriter extends Closeable {
+
+	/**
+	 * 追加分块
+	 *
+	 * @param chunk
+	 *            分块数据
+	 */
+	void write(byte[] chunk);
+
+	/**
+	 * 所有分块写入完成，安装快照
+	 */
+	void finish();
+
+	/**
+	 * 释放资源，未调用 {@link #finish()} 时丢弃已写入的数据
+	 */
+	@Override
+	void close();
+}
@@ -1,15 +1,28 @@
 package com.gill.consensus.raftplus.apis;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
 import com.gill.consensus.raftplus.common.Utils;
+import com.gill.consensus.raftplus.model.LogEntry;
 import com.gill.consensus.raftplus.model.Snapshot;
 
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * VersionDataStorage
+ * <p>
+ * 获取快照时只在 apply 锁内通过 {@link #captureSnapshotData()} 捕获时间点视图和对应的 applyIdx/applyTerm，序列化在锁外进行，
+ * 子类提供廉价的视图（例如写时复制的数据结构）后序列化不再阻塞 apply
  *
  * @author gill
  * @version 2023/09/18
@@ -20,10 +33,17 @@ public abstract class VersionDataStorage implements DataStorage {
 
 	private long applyTerm = 0;
 
-	private int applyIdx = 0;
+	private volatile int applyIdx = 0;
 
 	private final Lock lock = new ReentrantLock();
 
+	/**
+	 * 串行执行快照的序列化和落盘
+	 */
+	private final Lock snapshotLock = new ReentrantLock();
+
+	private volatile ExecutorService snapshotExecutor;
+
 	@Override
 	public int getApplyIdx() {
 		return applyIdx;
@@ -31,12 +51,25 @@ public abstract class VersionDataStorage implements DataStorage {
 
 	@Override
 	public final Snapshot getSnapshot() {
+		return capture().get();
+	}
+
+	/**
+	 * 在 apply 锁内捕获视图，返回的 Supplier 在锁外序列化
+	 */
+	private Supplier<Snapshot> capture() {
+		long term;
+		int idx;
+		Supplier<byte[]> data;
 		lock.lock();
 		try {
-			return new Snapshot(applyTerm, applyIdx, getSnapshotData());
+			term = applyTerm;
+			idx = applyIdx;
+			data = captureSnapshotData();
 		} finally {
 			lock.unlock();
 		}
+		return () -> new Snapshot(term, idx, data.get());
 	}
 
 	/**
@@ -46,23 +79,58 @@ public abstract class VersionDataStorage implements DataStorage {
 	 */
 	public abstract byte[] getSnapshotData();
 
+	/**
+	 * 在 apply 锁内调用，捕获当前状态的时间点视图，返回的 Supplier 会在锁外被调用以完成序列化，此时 apply 可能正在修改状态。
+	 * 默认在锁内直接序列化
+	 *
+	 * @return 快照数据
+	 */
+	protected Supplier<byte[]> captureSnapshotData() {
+		byte[] data = getSnapshotData();
+		return () -> data;
+	}
+
 	@Override
-	public final void apply(long logTerm, int logIdx, String command) {
-		if (logIdx == applyIdx + 1) {
-			lock.lock();
-			try {
-				this.applyTerm = logTerm;
-				this.applyIdx = logIdx;
-				if (Utils.NO_OP.equals(command)) {
-					return;
-				}
-				apply(command);
-			} finally {
-				lock.unlock();
+	public final String apply(long logTerm, int logIdx, byte[] command) {
+		lock.lock();
+		try {
+			return applyLocked(logTerm, logIdx, command);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 整批日志只加一次 apply 锁
+	 */
+	@Override
+	public final List<String> applyBatch(List<LogEntry> logEntries) {
+		List<String> results = new ArrayList<>(logEntries.size());
+		lock.lock();
+		try {
+			for (LogEntry logEntry : logEntries) {
+				results.add(applyLocked(logEntry.getTerm(), logEntry.getIndex(), logEntry.getPayload()));
 			}
-		} else {
+		} finally {
+			lock.unlock();
+		}
+		return results;
+	}
+
+	/**
+	 * 在锁内检查索引是否连续，避免与安装快照交错
+	 */
+	private String applyLocked(long logTerm, int logIdx, byte[] command) {
+		if (logIdx != applyIdx + 1) {
 			log.warn("discontinuous log index: {}, current index: {}", logIdx, this.applyIdx);
+			return null;
+		}
+		this.applyTerm = logTerm;
+		this.applyIdx = logIdx;
+		if (Arrays.equals(Utils.NO_OP_PAYLOAD, command)) {
+			return null;
 		}
+		return apply(command);
 	}
 
 	/**
@@ -72,16 +140,43 @@ public abstract class VersionDataStorage implements DataStorage {
 	 *            命令
 	 * @return 返回结果
 	 */
-	public abstract String apply(String command);
+	public abstract String apply(byte[] command);
 
 	@Override
-	public final void saveSnapshotToFile() {
-		lock.lock();
+	public final int saveSnapshotToFile() {
+		return saveSnapshotToFile(capture());
+	}
+
+	@Override
+	public final CompletableFuture<Integer> saveSnapshotToFileAsync() {
+		Supplier<Snapshot> snapshot = capture();
+		return CompletableFuture.supplyAsync(() -> saveSnapshotToFile(snapshot), snapshotExecutor());
+	}
+
+	private int saveSnapshotToFile(Supplier<Snapshot> capture) {
+		snapshotLock.lock();
 		try {
-			saveSnapshotToFile(getSnapshot());
+			Snapshot snapshot = capture.get();
+			return saveSnapshotToFile(snapshot) ? snapshot.getApplyIdx() : -1;
 		} finally {
-			lock.unlock();
+			snapshotLock.unlock();
+		}
+	}
+
+	private ExecutorService snapshotExecutor() {
+		if (snapshotExecutor == null) {
+			synchronized (this) {
+				if (snapshotExecutor == null) {
+					snapshotExecutor = new ThreadPoolExecutor(0, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+							r -> {
+								Thread thread = new Thread(r, "snapshot");
+								thread.setDaemon(true);
+								return thread;
+							});
+				}
+			}
 		}
+		return snapshotExecutor;
 	}
 
 	/**
@@ -89,19 +184,59 @@ public abstract class VersionDataStorage implements DataStorage {
 	 *
 	 * @param snapshot
 	 *            快照
+	 * @return 是否已持久化，重启后可由 {@link #loadSnapshot()} 恢复
 	 */
-	public abstract void saveSnapshotToFile(Snapshot snapshot);
+	public abstract boolean saveSnapshotToFile(Snapshot snapshot);
 
 	@Override
 	public final void saveSnapshot(long applyTerm, int applyIdx, byte[] data) {
+		install(applyTerm, applyIdx, () -> saveSnapshot(data));
+	}
+
+	/**
+	 * 在 apply 锁内安装快照，供流式写入的 {@link SnapshotWriter} 在接收完所有分块后调用
+	 *
+	 * @param applyTerm
+	 *            日志任期
+	 * @param applyIdx
+	 *            日志idx
+	 * @param installer
+	 *            替换状态
+	 */
+	protected final void install(long applyTerm, int applyIdx, Runnable installer) {
 		lock.lock();
 		try {
 			this.applyTerm = applyTerm;
 			this.applyIdx = applyIdx;
-			saveSnapshot(data);
+			installer.run();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public final SnapshotReader openSnapshot() {
+		SnapshotReader reader;
+		lock.lock();
+		try {
+			reader = openSnapshotReader(applyTerm, applyIdx);
 		} finally {
 			lock.unlock();
 		}
+		return reader == null ? new BytesSnapshotReader(getSnapshot()) : reader;
+	}
+
+	/**
+	 * 在 apply 锁内调用，基于当前状态的时间点视图创建流式读取器，读取在锁外进行。默认返回 null，读取完整的 {@link #getSnapshot()}
+	 *
+	 * @param applyTerm
+	 *            视图对应的日志任期
+	 * @param applyIdx
+	 *            视图对应的日志idx
+	 * @return 快照读取器
+	 */
+	protected SnapshotReader openSnapshotReader(long applyTerm, int applyIdx) {
+		return null;
 	}
 
 	/**
@@ -0,0 +1,230 @@
+package com.gill.consensus.raftplus.common;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * CowBucketMap 按桶写时复制的 Map，用于在不阻塞写入的情况下获取时间点视图
+ * <p>
+ * 数据按 key 的哈希分散在多个桶中，每个桶记录创建时的版本号。{@link #snapshot()} 只复制桶数组并递增版本号，
+ * 之后第一次修改旧版本的桶时先复制该桶，视图引用的桶不会再被修改。非线程安全，写入与 snapshot() 需由调用方串行执行，
+ * 返回的视图可以在其他线程读取
+ * <p>
+ * 平均每个桶超过 {@link #BUCKET_ENTRIES} 个条目时桶数量翻倍，拆分出新的桶而不修改旧桶，快照后每次写入复制的条目数不随数据量增长
+ *
+ * @author gill
+ * @version 2023/09/20
+ **/
+public class CowBucketMap<K, V> extends AbstractMap<K, V> {
+
+	private static final int DEFAULT_BUCKETS = 16;
+
+	/**
+	 * 每个桶的平均条目数上限
+	 */
+	static final int BUCKET_ENTRIES = 32;
+
+	private Bucket<K, V>[] buckets;
+
+	private int version = 0;
+
+	private int size = 0;
+
+	public CowBucketMap() {
+		this(DEFAULT_BUCKETS);
+	}
+
+	/**
+	 * @param bucketCount
+	 *            初始桶的数量，向上取整为 2 的幂
+	 */
+	@SuppressWarnings("unchecked")
+	public CowBucketMap(int bucketCount) {
+		int n = Integer.highestOneBit(Math.max(1, bucketCount - 1)) << 1;
+		this.buckets = new Bucket[n];
+		for (int i = 0; i < n; i++) {
+			buckets[i] = new Bucket<>(version, new HashMap<>(16));
+		}
+	}
+
+	/**
+	 * 获取当前内容的只读视图，耗时与桶数量成正比
+	 *
+	 * @return 视图
+	 */
+	public Map<K, V> snapshot() {
+		version++;
+		return Collections.unmodifiableMap(new View<>(buckets.clone(), size));
+	}
+
+	@Override
+	public V get(Object key) {
+		return buckets[indexOf(key)].map.get(key);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return buckets[indexOf(key)].map.containsKey(key);
+	}
+
+	@Override
+	public V put(K key, V value) {
+		Map<K, V> map = writable(indexOf(key));
+		int before = map.size();
+		V old = map.put(key, value);
+		size += map.size() - before;
+		if (size > buckets.length * BUCKET_ENTRIES) {
+			grow();
+		}
+		return old;
+	}
+
+	@Override
+	public V remove(Object key) {
+		int idx = indexOf(key);
+		if (!buckets[idx].map.containsKey(key)) {
+			return null;
+		}
+		Map<K, V> map = writable(idx);
+		size--;
+		return map.remove(key);
+	}
+
+	@Override
+	public void clear() {
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] = new Bucket<>(version, new HashMap<>(16));
+		}
+		size = 0;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public Set<Entry<K, V>> entrySet() {
+		return Collections.unmodifiableMap(new View<>(buckets, size)).entrySet();
+	}
+
+	/**
+	 * 桶数量翻倍，旧桶 i 的条目拆分到新桶 i 和 i + n，旧桶保持不变供视图读取
+	 */
+	@SuppressWarnings("unchecked")
+	private void grow() {
+		int n = buckets.length;
+		Bucket<K, V>[] grown = new Bucket[n << 1];
+		for (int i = 0; i < n; i++) {
+			HashMap<K, V> low = new HashMap<>(BUCKET_ENTRIES);
+			HashMap<K, V> high = new HashMap<>(BUCKET_ENTRIES);
+			for (Entry<K, V> entry : buckets[i].map.entrySet()) {
+				(indexOf(entry.getKey(), n << 1) == i ? low : high).put(entry.getKey(), entry.getValue());
+			}
+			grown[i] = new Bucket<>(version, low);
+			grown[i + n] = new Bucket<>(version, high);
+		}
+		buckets = grown;
+	}
+
+	/**
+	 * 桶的数量
+	 *
+	 * @return 桶的数量
+	 */
+	int bucketCount() {
+		return buckets.length;
+	}
+
+	private Map<K, V> writable(int idx) {
+		Bucket<K, V> bucket = buckets[idx];
+		if (bucket.version != version) {
+			bucket = new Bucket<>(version, new HashMap<>(bucket.map));
+			buckets[idx] = bucket;
+		}
+		return bucket.map;
+	}
+
+	private int indexOf(Object key) {
+		return indexOf(key, buckets.length);
+	}
+
+	private static int indexOf(Object key, int length) {
+		int h = key == null ? 0 : key.hashCode();
+		return (h ^ (h >>> 16)) & (length - 1);
+	}
+
+	private static class Bucket<K, V> {
+
+		private final int version;
+
+		private final HashMap<K, V> map;
+
+		Bucket(int version, HashMap<K, V> map) {
+			this.version = version;
+			this.map = map;
+		}
+	}
+
+	private static class View<K, V> extends AbstractMap<K, V> {
+
+		private final Bucket<K, V>[] buckets;
+
+		private final int size;
+
+		View(Bucket<K, V>[] buckets, int size) {
+			this.buckets = buckets;
+			this.size = size;
+		}
+
+		@Override
+		public V get(Object key) {
+			return buckets[indexOf(key, buckets.length)].map.get(key);
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return buckets[indexOf(key, buckets.length)].map.containsKey(key);
+		}
+
+		@Override
+		public Set<Entry<K, V>> entrySet() {
+			return new AbstractSet<Entry<K, V>>() {
+
+				@Override
+				public Iterator<Entry<K, V>> iterator() {
+					return new Iterator<Entry<K, V>>() {
+
+						private int idx = 0;
+
+						private Iterator<Entry<K, V>> it = Collections.emptyIterator();
+
+						@Override
+						public boolean hasNext() {
+							while (!it.hasNext() && idx < buckets.length) {
+								it = buckets[idx++].map.entrySet().iterator();
+							}
+							return it.hasNext();
+						}
+
+						@Override
+						public Entry<K, V> next() {
+							hasNext();
+							return it.next();
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return size;
+				}
+			};
+		}
+	}
+}
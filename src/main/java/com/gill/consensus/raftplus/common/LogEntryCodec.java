@@ -0,0 +1,173 @@
+package com.gill.consensus.raftplus.common;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import com.gill.consensus.raftplus.exception.StorageException;
+import com.gill.consensus.raftplus.model.LogEntry;
+
+/**
+ * LogEntryCodec 日志的二进制编解码，日志存储与节点间传输共用同一种记录格式
+ * <p>
+ * 记录格式：| length(4) | crc32(4) | index(4) | term(8) | payload(length - 12) |，crc32 覆盖 length 之后的 body
+ *
+ * @author gill
+ * @version 2023/09/20
+ **/
+public class LogEntryCodec {
+
+	/**
+	 * length(4) + crc32(4)
+	 */
+	public static final int RECORD_HEADER = 8;
+
+	/**
+	 * index(4) + term(8)
+	 */
+	public static final int ENTRY_HEADER = 12;
+
+	/**
+	 * 记录所需的空间
+	 *
+	 * @param logEntry
+	 *            日志
+	 * @return 字节数
+	 */
+	public static int recordSize(LogEntry logEntry) {
+		return RECORD_HEADER + ENTRY_HEADER + logEntry.getPayload().length;
+	}
+
+	/**
+	 * 在 pos 处写入一条记录，不改变 buffer 的 position。先写 body 和 crc32，最后写 length，length 为 0 的位置视为记录的末尾
+	 *
+	 * @param logEntry
+	 *            日志
+	 * @param buffer
+	 *            缓冲区
+	 * @param pos
+	 *            写入位置
+	 * @return 记录总长度
+	 */
+	public static int encode(LogEntry logEntry, ByteBuffer buffer, int pos) {
+		byte[] payload = logEntry.getPayload();
+		int len = ENTRY_HEADER + payload.length;
+		ByteBuffer dup = buffer.duplicate();
+		dup.position(pos + RECORD_HEADER);
+		dup.putInt(logEntry.getIndex()).putLong(logEntry.getTerm()).put(payload);
+		buffer.putInt(pos + 4, crc(buffer, pos + RECORD_HEADER, len));
+		buffer.putInt(pos, len);
+		return RECORD_HEADER + len;
+	}
+
+	/**
+	 * 校验 pos 处的记录
+	 *
+	 * @param buffer
+	 *            缓冲区
+	 * @param pos
+	 *            记录位置
+	 * @param limit
+	 *            可读的上界
+	 * @return 记录总长度，记录不完整或已损坏时返回 -1
+	 */
+	public static int check(ByteBuffer buffer, int pos, int limit) {
+		if (pos + RECORD_HEADER > limit) {
+			return -1;
+		}
+		int len = buffer.getInt(pos);
+		if (len < ENTRY_HEADER || len > limit - pos - RECORD_HEADER) {
+			return -1;
+		}
+		if (buffer.getInt(pos + 4) != crc(buffer, pos + RECORD_HEADER, len)) {
+			return -1;
+		}
+		return RECORD_HEADER + len;
+	}
+
+	/**
+	 * 读取 pos 处记录的日志索引，调用方需保证记录完整
+	 *
+	 * @param buffer
+	 *            缓冲区
+	 * @param pos
+	 *            记录位置
+	 * @return 日志索引
+	 */
+	public static int index(ByteBuffer buffer, int pos) {
+		return buffer.getInt(pos + RECORD_HEADER);
+	}
+
+	/**
+	 * 解码 pos 处的记录，调用方需保证记录完整
+	 *
+	 * @param buffer
+	 *            缓冲区
+	 * @param pos
+	 *            记录位置
+	 * @return 日志
+	 */
+	public static LogEntry decode(ByteBuffer buffer, int pos) {
+		int len = buffer.getInt(pos);
+		ByteBuffer dup = buffer.duplicate();
+		dup.position(pos + RECORD_HEADER);
+		int index = dup.getInt();
+		long term = dup.getLong();
+		byte[] payload = new byte[len - ENTRY_HEADER];
+		dup.get(payload);
+		return new LogEntry(index, term, payload);
+	}
+
+	/**
+	 * 批量编码，用于节点间传输：| count(4) | record... |
+	 *
+	 * @param logEntries
+	 *            日志
+	 * @return 编码结果
+	 */
+	public static byte[] encode(List<LogEntry> logEntries) {
+		int size = 4;
+		for (LogEntry logEntry : logEntries) {
+			size += recordSize(logEntry);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		buffer.putInt(0, logEntries.size());
+		int pos = 4;
+		for (LogEntry logEntry : logEntries) {
+			pos += encode(logEntry, buffer, pos);
+		}
+		return buffer.array();
+	}
+
+	/**
+	 * 批量解码
+	 *
+	 * @param data
+	 *            编码结果
+	 * @return 日志
+	 */
+	public static List<LogEntry> decode(byte[] data) {
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		int count = buffer.getInt(0);
+		List<LogEntry> logEntries = new ArrayList<>(count);
+		int pos = 4;
+		for (int i = 0; i < count; i++) {
+			int recordLen = check(buffer, pos, data.length);
+			if (recordLen < 0) {
+				throw new StorageException(String.format("log record %s at position %s is corrupted", i, pos));
+			}
+			logEntries.add(decode(buffer, pos));
+			pos += recordLen;
+		}
+		return logEntries;
+	}
+
+	private static int crc(ByteBuffer buffer, int pos, int len) {
+		ByteBuffer dup = buffer.duplicate();
+		dup.limit(pos + len).position(pos);
+		CRC32 crc32 = new CRC32();
+		crc32.update(dup);
+		return (int) crc32.getValue();
+	}
+}
@@ -1,5 +1,6 @@
 package com.gill.consensus.raftplus.common;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
@@ -22,6 +23,8 @@ public class Utils {
 
 	public final static String NO_OP = "no_op";
 
+	public final static byte[] NO_OP_PAYLOAD = NO_OP.getBytes(StandardCharsets.UTF_8);
+
 	/**
 	 * 耗时计算
 	 * 
@@ -23,15 +23,153 @@ public class RaftConfig {
 
 	private long timeoutRandomFactor = 150;
 
-	private int repairLength = 100;
+	/**
+	 * 一个心跳周期内已成功追加过日志且已得知最新提交索引的 follower 不再单独发送心跳
+	 */
+	private boolean heartbeatSuppression = true;
+
+	/**
+	 * 复制线程没有日志可发送时，挂起前自旋检查的次数，0 表示直接挂起等待唤醒
+	 */
+	private int replicateSpins = 0;
+
+	/**
+	 * 每个 follower 最多在途的追加批次数，1 表示收到响应后再发送下一批
+	 */
+	private int replicateWindow = 4;
+
+	/**
+	 * 每个 follower 队列中尚未发送的日志最大条数，超过时不再放入队列，复制追上后从 LogManager 补读
+	 */
+	private int followerBacklogEntries = 100000;
+
+	/**
+	 * 每个 follower 队列中尚未发送的日志最大字节数，按日志记录编码后的大小计算
+	 */
+	private long followerBacklogBytes = 64L * 1024 * 1024;
+
+	/**
+	 * 应用线程每批最多应用的日志条数
+	 */
+	private int applyBatchSize = 1000;
+
+	/**
+	 * leader 生成日志后立即交给各个 follower 复制，与本地持久化并行，本地持久化的索引作为多数派中的一票
+	 */
+	private boolean parallelPersist = false;
 
 	private LogConfig logConfig = new LogConfig();
 
+	private BatchConfig batchConfig = new BatchConfig();
+
+	private AdmissionConfig admissionConfig = new AdmissionConfig();
+
+	private SnapshotConfig snapshotConfig = new SnapshotConfig();
+
 	@Getter
 	@Setter
 	@ToString
 	public static class LogConfig {
 
 		private int loadLen = 30;
+
+		/**
+		 * 内存中缓存的最大日志条数
+		 */
+		private int cacheCapacity = 65536;
+
+		/**
+		 * 内存中缓存的日志最大字节数
+		 */
+		private long cacheBytes = 64L * 1024 * 1024;
+	}
+
+	@Getter
+	@Setter
+	@ToString
+	public static class BatchConfig {
+
+		/**
+		 * 每次追加请求的最大日志条数
+		 */
+		private int maxEntries = 100;
+
+		/**
+		 * 每次追加请求的最大字节数，单条日志超过该值时单独发送
+		 */
+		private long maxBytes = 1024 * 1024;
+
+		/**
+		 * 未凑满一批时最长等待时间（微秒），0 表示不等待
+		 */
+		private long maxLingerMicros = 0;
+
+		/**
+		 * 等待时间从 0 开始增长时的步长（微秒）
+		 */
+		private long lingerStepMicros = 100;
+	}
+
+	@Getter
+	@Setter
+	@ToString
+	public static class AdmissionConfig {
+
+		/**
+		 * 已生成但尚未应用的提案最大条数
+		 */
+		private int maxPendingEntries = 100000;
+
+		/**
+		 * 已生成但尚未应用的提案命令最大字节数
+		 */
+		private long maxPendingBytes = 64 * 1024 * 1024;
+
+		/**
+		 * 超过上限时提案等待的最长时间（毫秒），0 表示直接拒绝
+		 */
+		private long admissionTimeout = 0;
+	}
+
+	@Getter
+	@Setter
+	@ToString
+	public static class SnapshotConfig {
+
+		/**
+		 * 向 follower 同步快照时每个分块的最大字节数
+		 */
+		private int chunkSize = 1024 * 1024;
+
+		/**
+		 * 增量同步快照：先获取 follower 当前快照的分块摘要，只发送摘要不同的分块。适用于快照编码在状态相近时字节布局也相近的存储。
+		 * IntMap 快照的条目顺序依赖各节点的插入历史，相同状态的字节布局也不同，因此默认关闭
+		 */
+		private boolean deltaTransfer = false;
+
+		/**
+		 * 检查是否需要自动保存快照的间隔（毫秒），小于等于 0 时关闭自动快照。默认关闭，只有能持久化快照的存储才需要开启
+		 */
+		private long checkInterval = 0;
+
+		/**
+		 * 距上次快照提交的日志条数达到该值时保存快照，0 表示不启用
+		 */
+		private int logEntries = 100000;
+
+		/**
+		 * 距上次快照写入的日志字节数达到该值时保存快照，0 表示不启用
+		 */
+		private long logBytes = 256L * 1024 * 1024;
+
+		/**
+		 * 距上次快照超过该时长（毫秒）且有新提交的日志时保存快照，0 表示不启用
+		 */
+		private long interval = 60L * 60 * 1000;
+
+		/**
+		 * 应用速率（条/秒）高于该值时推迟按时长触发的快照，按条数和字节数触发的快照不受影响，0 表示不启用
+		 */
+		private long busyApplyRate = 0;
 	}
 }
@@ -17,7 +17,15 @@ public class AppendLogReply extends Reply {
 
 	private boolean syncSnapshot = false;
 
-	private int compareIdx = -1;
+	/**
+	 * 冲突位置上 follower 日志的任期，-1 表示 follower 在该位置没有日志
+	 */
+	private long conflictTerm = -1;
+
+	/**
+	 * follower 中 conflictTerm 的第一条日志索引；conflictTerm 为 -1 时为 follower 期望的下一条日志索引
+	 */
+	private int conflictIdx = -1;
 
 	public AppendLogReply(boolean success, long term) {
 		super(success, term);
@@ -28,9 +36,9 @@ public class AppendLogReply extends Reply {
 		this.syncSnapshot = syncSnapshot;
 	}
 
-	public AppendLogReply(boolean success, long term, boolean syncSnapshot, int compareIdx) {
+	public AppendLogReply(boolean success, long term, long conflictTerm, int conflictIdx) {
 		super(success, term);
-		this.syncSnapshot = syncSnapshot;
-		this.compareIdx = compareIdx;
+		this.conflictTerm = conflictTerm;
+		this.conflictIdx = conflictIdx;
 	}
 }
@@ -4,25 +4,58 @@ import lombok.Getter;
 import lombok.ToString;
 
 /**
- * ReplicateSnapshotParam
+ * ReplicateSnapshotParam 快照按分块传输，data 为从 offset 开始的一个分块
  *
  * @author gill
  * @version 2023/09/12
  **/
 @Getter
-@ToString(callSuper = true)
+@ToString(callSuper = true, exclude = "data")
 public class ReplicateSnapshotParam extends BaseParam {
 
 	private final int applyIdx;
 
 	private final long applyTerm;
 
+	/**
+	 * 分块在快照中的偏移量
+	 */
+	private final long offset;
+
 	private final byte[] data;
 
-	public ReplicateSnapshotParam(int nodeId, long term, int applyIdx, long applyTerm, byte[] data) {
+	/**
+	 * 大于 0 时 data 为空，follower 从自身快照的相同偏移量复制该长度的数据
+	 */
+	private final int reuseLength;
+
+	/**
+	 * 是否为最后一个分块
+	 */
+	private final boolean done;
+
+	public ReplicateSnapshotParam(int nodeId, long term, int applyIdx, long applyTerm, long offset, byte[] data,
+			boolean done) {
+		this(nodeId, term, applyIdx, applyTerm, offset, data, 0, done);
+	}
+
+	public ReplicateSnapshotParam(int nodeId, long term, int applyIdx, long applyTerm, long offset, byte[] data,
+			int reuseLength, boolean done) {
 		super(nodeId, term);
 		this.applyIdx = applyIdx;
 		this.applyTerm = applyTerm;
+		this.offset = offset;
 		this.data = data;
+		this.reuseLength = reuseLength;
+		this.done = done;
+	}
+
+	/**
+	 * 分块长度
+	 *
+	 * @return 字节数
+	 */
+	public int length() {
+		return reuseLength > 0 ? reuseLength : data.length;
 	}
 }
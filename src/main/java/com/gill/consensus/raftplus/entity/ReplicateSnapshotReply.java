@@ -0,0 +1,31 @@
+package com.gill.consensus.raftplus.entity;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * ReplicateSnapshotReply
+ *
+ * @author gill
+ * @version 2023/09/20
+ **/
+@Getter
+@Setter
+@ToString(callSuper = true)
+public class ReplicateSnapshotReply extends Reply {
+
+	/**
+	 * follower 期望的下一个分块偏移量，leader 据此续传，-1 表示未知
+	 */
+	private long nextOffset = -1;
+
+	public ReplicateSnapshotReply(boolean success, long term) {
+		super(success, term);
+	}
+
+	public ReplicateSnapshotReply(boolean success, long term, long nextOffset) {
+		super(success, term);
+		this.nextOffset = nextOffset;
+	}
+}
@@ -0,0 +1,22 @@
+package com.gill.consensus.raftplus.entity;
+
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * SnapshotDigestParam 请求 follower 按分块计算当前快照的摘要
+ *
+ * @author gill
+ * @version 2023/09/20
+ **/
+@Getter
+@ToString(callSuper = true)
+public class SnapshotDigestParam extends BaseParam {
+
+	private final int chunkSize;
+
+	public SnapshotDigestParam(int nodeId, long term, int chunkSize) {
+		super(nodeId, term);
+		this.chunkSize = chunkSize;
+	}
+}
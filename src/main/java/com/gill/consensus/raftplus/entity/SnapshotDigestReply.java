@@ -0,0 +1,31 @@
+package com.gill.consensus.raftplus.entity;
+
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+
+/**
+ * SnapshotDigestReply
+ *
+ * @author gill
+ * @version 2023/09/20
+ **/
+@Getter
+@Setter
+@ToString(callSuper = true, exclude = "hashes")
+public class SnapshotDigestReply extends Reply {
+
+	/**
+	 * follower 当前快照每个分块的 SHA-256
+	 */
+	private byte[][] hashes = new byte[0][];
+
+	public SnapshotDigestReply(boolean success, long term) {
+		super(success, term);
+	}
+
+	public SnapshotDigestReply(boolean success, long term, byte[][] hashes) {
+		super(success, term);
+		this.hashes = hashes;
+	}
+}
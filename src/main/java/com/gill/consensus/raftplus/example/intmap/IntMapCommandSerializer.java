@@ -1,11 +1,14 @@
 package com.gill.consensus.raftplus.example.intmap;
 
-import com.gill.consensus.raftplus.apis.CommandSerializer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
-import cn.hutool.json.JSONUtil;
+import com.gill.consensus.raftplus.apis.CommandSerializer;
 
 /**
  * IntMapCommandSerializer
+ * <p>
+ * 格式：| type(1) | keyLength(4) | key | value(4, 可选) |
  *
  * @author gill
  * @version 2023/09/07
@@ -13,12 +16,24 @@ import cn.hutool.json.JSONUtil;
 public class IntMapCommandSerializer implements CommandSerializer<IntMapCommand> {
 
 	@Override
-	public String serialize(IntMapCommand command) {
-		return JSONUtil.toJsonStr(command);
+	public byte[] serialize(IntMapCommand command) {
+		byte[] key = command.getKey().getBytes(StandardCharsets.UTF_8);
+		Integer value = command.getValue();
+		ByteBuffer buffer = ByteBuffer.allocate(1 + 4 + key.length + (value == null ? 0 : 4));
+		buffer.put((byte) command.getType().ordinal()).putInt(key.length).put(key);
+		if (value != null) {
+			buffer.putInt(value);
+		}
+		return buffer.array();
 	}
 
 	@Override
-	public IntMapCommand deserialize(String commandStr) {
-		return JSONUtil.toBean(commandStr, IntMapCommand.class);
+	public IntMapCommand deserialize(byte[] data) {
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		IntMapCommand.Type type = IntMapCommand.Type.values()[buffer.get()];
+		byte[] key = new byte[buffer.getInt()];
+		buffer.get(key);
+		Integer value = buffer.remaining() >= 4 ? buffer.getInt() : null;
+		return IntMapCommand.builder(type, new String(key, StandardCharsets.UTF_8)).value(value).build();
 	}
 }
@@ -1,10 +1,15 @@
 package com.gill.consensus.raftplus.example.intmap;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Supplier;
 
+import com.gill.consensus.raftplus.apis.SnapshotReader;
+import com.gill.consensus.raftplus.apis.SnapshotWriter;
 import com.gill.consensus.raftplus.apis.VersionDataStorage;
+import com.gill.consensus.raftplus.common.CowBucketMap;
 import com.gill.consensus.raftplus.model.Snapshot;
 
 import cn.hutool.core.lang.TypeReference;
@@ -20,10 +25,12 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class IntMapDataStorage extends VersionDataStorage {
 
-	private Map<String, Integer> map = new HashMap<>(1024);
+	private CowBucketMap<String, Integer> map = new CowBucketMap<>();
 
 	private final IntMapCommandSerializer serializer = new IntMapCommandSerializer();
 
+	private final IntMapSnapshotCodec codec = new IntMapSnapshotCodec();
+
 	/**
 	 * 获取
 	 * 
@@ -36,37 +43,70 @@ public class IntMapDataStorage extends VersionDataStorage {
 	}
 
 	@Override
-	public int getApplyIdx() {
+	public int loadSnapshot() {
+		map = new CowBucketMap<>();
 		return 0;
 	}
 
 	@Override
-	public int loadSnapshot() {
-		map = new HashMap<>(1024);
-		return 0;
+	public byte[] getSnapshotData() {
+		return encode(map);
 	}
 
 	@Override
-	public byte[] getSnapshotData() {
-		String mapStr = JSONUtil.toJsonStr(map);
-		return mapStr.getBytes(StandardCharsets.UTF_8);
+	protected Supplier<byte[]> captureSnapshotData() {
+		Map<String, Integer> view = map.snapshot();
+		return () -> encode(view);
 	}
 
 	@Override
-	public String apply(String command) {
+	protected SnapshotReader openSnapshotReader(long applyTerm, int applyIdx) {
+		return new IntMapSnapshotReader(map.snapshot(), applyTerm, applyIdx, codec);
+	}
+
+	@Override
+	public SnapshotWriter createSnapshotWriter(long applyTerm, int applyIdx) {
+		return new IntMapSnapshotWriter(this, applyTerm, applyIdx, codec);
+	}
+
+	/**
+	 * 替换为流式写入完成的数据
+	 */
+	void install(long applyTerm, int applyIdx, CowBucketMap<String, Integer> newMap) {
+		install(applyTerm, applyIdx, () -> map = newMap);
+	}
+
+	private byte[] encode(Map<String, Integer> data) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(32, data.size() * 16));
+		codec.encode(data, out);
+		return out.toByteArray();
+	}
+
+	@Override
+	public String apply(byte[] command) {
 		IntMapCommand cm = serializer.deserialize(command);
 		return cm.execute(map, cm);
 	}
 
 	@Override
-	public void saveSnapshotToFile(Snapshot snapshot) {
+	public boolean saveSnapshotToFile(Snapshot snapshot) {
 		log.debug("ignore saving snapshot to file");
+		return false;
 	}
 
 	@Override
 	public void saveSnapshot(byte[] data) {
-		map = JSONUtil.toBean(new String(data, StandardCharsets.UTF_8), new TypeReference<Map<String, Integer>>() {
-		}, true);
+		CowBucketMap<String, Integer> newMap = new CowBucketMap<>();
+		if (IntMapSnapshotCodec.matches(data)) {
+			codec.decode(new ByteArrayInputStream(data), newMap::put);
+		} else {
+
+			// 兼容旧版本的 JSON 快照
+			newMap.putAll(JSONUtil.toBean(new String(data, StandardCharsets.UTF_8),
+					new TypeReference<Map<String, Integer>>() {
+					}, true));
+		}
+		map = newMap;
 	}
 
 	@Override
@@ -1,10 +1,15 @@
 package com.gill.consensus.raftplus.example.intmap;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
 
 import com.gill.consensus.raftplus.Node;
+import com.gill.consensus.raftplus.ProposeHelper;
 import com.gill.consensus.raftplus.apis.EmptyLogStorage;
 import com.gill.consensus.raftplus.apis.EmptyMetaStorage;
+import com.gill.consensus.raftplus.model.ProposeResult;
 
 /**
  * MapServer
@@ -55,6 +60,35 @@ public class IntMapServer {
 		return node.propose(serializer.serialize(command));
 	}
 
+	/**
+	 * 异步设置
+	 *
+	 * @param key
+	 *            key
+	 * @param value
+	 *            value
+	 * @return 日志索引和命令的执行结果
+	 */
+	public CompletableFuture<ProposeResult> setAsync(String key, int value) {
+		IntMapCommand command = IntMapCommand.builder(IntMapCommand.Type.PUT, key).value(value).build();
+		return node.proposeAsync(serializer.serialize(command));
+	}
+
+	/**
+	 * 批量设置，所有命令一起持久化和复制
+	 *
+	 * @param entries
+	 *            key-value
+	 * @return 按 entries 的遍历顺序排列的 xid，失败为 -1
+	 */
+	public List<Integer> setAll(Map<String, Integer> entries) {
+		List<byte[]> commands = entries.entrySet().stream()
+				.map(entry -> IntMapCommand.builder(IntMapCommand.Type.PUT, entry.getKey()).value(entry.getValue())
+						.build())
+				.map(serializer::serialize).collect(Collectors.toList());
+		return ProposeHelper.awaitIndexes(node.proposeBatchAsync(commands));
+	}
+
 	/**
 	 * 获取
 	 * 
@@ -0,0 +1,522 @@
+package com.gill.consensus.raftplus.example.intmap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+import com.gill.consensus.raftplus.exception.StorageException;
+
+/**
+ * IntMapSnapshotCodec IntMap 快照的二进制编解码，按块流式读写，内存占用与块大小相关而与数据量无关
+ * <p>
+ * 格式：| magic(3) | version(1) | flags(1) | block... | 0 |，flags 最低位表示每个块带 crc32 校验
+ * <p>
+ * 块：| count(varint) | bodyLength(varint) | body | crc32(4, 可选) |，count 为 0 表示结束，crc32 覆盖 body
+ * <p>
+ * 条目：| keyLength &lt;&lt; 1 | isNull (varint) | key(UTF-8) | value(4, 非 null 时) |
+ *
+ * @author gill
+ * @version 2023/09/20
+ **/
+public class IntMapSnapshotCodec {
+
+	private static final byte[] MAGIC = {'I', 'M', 'S'};
+
+	public static final int VERSION = 1;
+
+	private static final int FLAG_CHECKSUM = 1;
+
+	private static final int HEADER = MAGIC.length + 2;
+
+	/**
+	 * 每个块的条目数
+	 */
+	private static final int BLOCK_ENTRIES = 4096;
+
+	private final boolean checksum;
+
+	public IntMapSnapshotCodec() {
+		this(true);
+	}
+
+	/**
+	 * @param checksum
+	 *            编码时是否为每个块写入 crc32
+	 */
+	public IntMapSnapshotCodec(boolean checksum) {
+		this.checksum = checksum;
+	}
+
+	/**
+	 * 是否为该编码格式，用于兼容旧的 JSON 快照
+	 *
+	 * @param data
+	 *            快照数据
+	 * @return 是否匹配
+	 */
+	public static boolean matches(byte[] data) {
+		return data.length >= HEADER && data[0] == MAGIC[0] && data[1] == MAGIC[1] && data[2] == MAGIC[2];
+	}
+
+	/**
+	 * 编码
+	 *
+	 * @param map
+	 *            数据
+	 * @param out
+	 *            输出流
+	 */
+	public void encode(Map<String, Integer> map, OutputStream out) {
+		try (EncodeStream in = encoder(map)) {
+			byte[] buf = new byte[64 * 1024];
+			int n;
+			while ((n = in.read(buf, 0, buf.length)) > 0) {
+				out.write(buf, 0, n);
+			}
+			out.flush();
+		} catch (IOException e) {
+			throw new StorageException("encode int map snapshot failed", e);
+		}
+	}
+
+	/**
+	 * 按需编码，读取时才编码下一个块，只缓冲一个块。同一个 map 的多次编码结果相同
+	 *
+	 * @param map
+	 *            数据，读取期间不能被修改
+	 * @return 编码后的数据流
+	 */
+	public EncodeStream encoder(Map<String, Integer> map) {
+		return new EncodeStream(map.entrySet().iterator());
+	}
+
+	/**
+	 * 增量解码，数据按分块到达，只缓冲尚未凑满的块
+	 *
+	 * @param consumer
+	 *            接收每个条目
+	 * @return 解码器
+	 */
+	public Decoder decoder(BiConsumer<String, Integer> consumer) {
+		return new Decoder(consumer);
+	}
+
+	private void writeBlock(OutputStream out, Buffer head, Buffer body, int count) throws IOException {
+		head.reset();
+		head.putVarint(count);
+		head.putVarint(body.size);
+		if (checksum) {
+			body.putInt(crc(body.data, body.size));
+		}
+		out.write(head.data, 0, head.size);
+		out.write(body.data, 0, body.size);
+		body.reset();
+	}
+
+	/**
+	 * 解码
+	 *
+	 * @param in
+	 *            输入流
+	 * @param consumer
+	 *            接收每个条目
+	 */
+	public void decode(InputStream in, BiConsumer<String, Integer> consumer) {
+		try {
+			byte[] header = new byte[HEADER];
+			readFully(in, header, HEADER);
+			if (!matches(header)) {
+				throw new StorageException("not an int map snapshot");
+			}
+			if (header[3] != VERSION) {
+				throw new StorageException("unsupported int map snapshot version: " + header[3]);
+			}
+			boolean withChecksum = (header[4] & FLAG_CHECKSUM) != 0;
+			byte[] body = new byte[64 * 1024];
+			int block = 0;
+			int count;
+			while ((count = readVarint(in)) > 0) {
+				int len = readVarint(in);
+				int total = len + (withChecksum ? 4 : 0);
+				if (body.length < total) {
+					body = new byte[Math.max(total, body.length * 2)];
+				}
+				readFully(in, body, total);
+				if (withChecksum && getInt(body, len) != crc(body, len)) {
+					throw new StorageException(String.format("int map snapshot block %s is corrupted", block));
+				}
+				decodeBlock(body, len, count, consumer);
+				block++;
+			}
+		} catch (IOException e) {
+			throw new StorageException("decode int map snapshot failed", e);
+		}
+	}
+
+	private static void decodeBlock(byte[] body, int len, int count, BiConsumer<String, Integer> consumer) {
+		int pos = 0;
+		for (int i = 0; i < count; i++) {
+			int tag = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = body[pos++];
+				tag |= (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			int keyLen = tag >>> 1;
+			if (keyLen > len - pos - ((tag & 1) == 0 ? 4 : 0)) {
+				throw new StorageException("int map snapshot entry exceeds block at " + pos);
+			}
+			String key = new String(body, pos, keyLen, StandardCharsets.UTF_8);
+			pos += keyLen;
+			Integer value = null;
+			if ((tag & 1) == 0) {
+				value = getInt(body, pos);
+				pos += 4;
+			}
+			consumer.accept(key, value);
+		}
+		if (pos != len) {
+			throw new StorageException(
+					String.format("int map snapshot block length mismatch, expect %s, actual %s", len, pos));
+		}
+	}
+
+	/**
+	 * 从 buf 的 pos 处读取 varint
+	 *
+	 * @return 读取后的位置和值，数据不完整时返回 -1
+	 */
+	private static long varint(byte[] buf, int pos, int limit) {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			if (pos >= limit) {
+				return -1;
+			}
+			byte b = buf[pos++];
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				return (long) pos << 32 | (value & 0xFFFFFFFFL);
+			}
+		}
+		throw new StorageException("malformed varint in int map snapshot");
+	}
+
+	private static int readVarint(InputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = in.read();
+			if (b < 0) {
+				throw new StorageException("unexpected end of int map snapshot");
+			}
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new StorageException("malformed varint in int map snapshot");
+	}
+
+	private static void readFully(InputStream in, byte[] buf, int len) throws IOException {
+		int off = 0;
+		while (off < len) {
+			int n = in.read(buf, off, len - off);
+			if (n < 0) {
+				throw new StorageException("unexpected end of int map snapshot");
+			}
+			off += n;
+		}
+	}
+
+	private static int getInt(byte[] buf, int pos) {
+		return (buf[pos] & 0xFF) << 24 | (buf[pos + 1] & 0xFF) << 16 | (buf[pos + 2] & 0xFF) << 8 | buf[pos + 3] & 0xFF;
+	}
+
+	private static int crc(byte[] buf, int len) {
+		CRC32 crc32 = new CRC32();
+		crc32.update(buf, 0, len);
+		return (int) crc32.getValue();
+	}
+
+	/**
+	 * 按需编码的数据流
+	 */
+	public class EncodeStream extends InputStream {
+
+		private final Iterator<Map.Entry<String, Integer>> iterator;
+
+		private final Buffer body = new Buffer(64 * 1024);
+
+		private final Buffer head = new Buffer(16);
+
+		private final BlockOutput out = new BlockOutput();
+
+		private int pos = 0;
+
+		private boolean ended = false;
+
+		EncodeStream(Iterator<Map.Entry<String, Integer>> iterator) {
+			this.iterator = iterator;
+			out.write(MAGIC, 0, MAGIC.length);
+			out.write(VERSION);
+			out.write(checksum ? FLAG_CHECKSUM : 0);
+		}
+
+		/**
+		 * 当前块读完时编码下一个块
+		 *
+		 * @return 是否还有数据
+		 */
+		private boolean fill() throws IOException {
+			if (pos < out.size()) {
+				return true;
+			}
+			out.reset();
+			pos = 0;
+			if (ended) {
+				return false;
+			}
+			int count = 0;
+			while (count < BLOCK_ENTRIES && iterator.hasNext()) {
+				Map.Entry<String, Integer> entry = iterator.next();
+				byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+				Integer value = entry.getValue();
+				body.putVarint(key.length << 1 | (value == null ? 1 : 0));
+				body.put(key, key.length);
+				if (value != null) {
+					body.putInt(value);
+				}
+				count++;
+			}
+			if (count > 0) {
+				writeBlock(out, head, body, count);
+			} else {
+				out.write(0);
+				ended = true;
+			}
+			return true;
+		}
+
+		@Override
+		public int read() throws IOException {
+			return fill() ? out.buf()[pos++] & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (!fill()) {
+				return -1;
+			}
+			int n = Math.min(len, out.size() - pos);
+			System.arraycopy(out.buf(), pos, b, off, n);
+			pos += n;
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = 0;
+			while (skipped < n && fill()) {
+				int k = (int) Math.min(n - skipped, out.size() - pos);
+				pos += k;
+				skipped += k;
+			}
+			return skipped;
+		}
+
+		/**
+		 * 当前缓冲的容量，用于观察内存占用
+		 *
+		 * @return 字节数
+		 */
+		int capacity() {
+			return out.buf().length + body.data.length;
+		}
+	}
+
+	/**
+	 * 增量解码器
+	 */
+	public static class Decoder {
+
+		private final BiConsumer<String, Integer> consumer;
+
+		private byte[] buf = new byte[64 * 1024];
+
+		private int size = 0;
+
+		private boolean started = false;
+
+		private boolean withChecksum;
+
+		private boolean finished = false;
+
+		private int block = 0;
+
+		Decoder(BiConsumer<String, Integer> consumer) {
+			this.consumer = consumer;
+		}
+
+		/**
+		 * 追加数据，解码所有已完整到达的块
+		 *
+		 * @param data
+		 *            数据
+		 */
+		public void write(byte[] data) {
+			if (data.length == 0) {
+				return;
+			}
+			if (finished) {
+				throw new StorageException("unexpected data after the end of int map snapshot");
+			}
+			if (size + data.length > buf.length) {
+				buf = Arrays.copyOf(buf, Math.max(size + data.length, buf.length * 2));
+			}
+			System.arraycopy(data, 0, buf, size, data.length);
+			size += data.length;
+
+			int pos = 0;
+			if (!started) {
+				if (size < HEADER) {
+					return;
+				}
+				if (!matches(buf)) {
+					throw new StorageException("not an int map snapshot");
+				}
+				if (buf[3] != VERSION) {
+					throw new StorageException("unsupported int map snapshot version: " + buf[3]);
+				}
+				withChecksum = (buf[4] & FLAG_CHECKSUM) != 0;
+				started = true;
+				pos = HEADER;
+			}
+			while (!finished) {
+				long count = varint(buf, pos, size);
+				if (count < 0) {
+					break;
+				}
+				if ((int) count == 0) {
+					pos = (int) (count >>> 32);
+					finished = true;
+					break;
+				}
+				long len = varint(buf, (int) (count >>> 32), size);
+				if (len < 0) {
+					break;
+				}
+				int bodyPos = (int) (len >>> 32);
+				int bodyLen = (int) len;
+				int end = bodyPos + bodyLen + (withChecksum ? 4 : 0);
+				if (end > size) {
+					break;
+				}
+				byte[] body = Arrays.copyOfRange(buf, bodyPos, end);
+				if (withChecksum && getInt(body, bodyLen) != crc(body, bodyLen)) {
+					throw new StorageException(String.format("int map snapshot block %s is corrupted", block));
+				}
+				decodeBlock(body, bodyLen, (int) count, consumer);
+				block++;
+				pos = end;
+			}
+			if (finished && pos < size) {
+				throw new StorageException("unexpected data after the end of int map snapshot");
+			}
+			System.arraycopy(buf, pos, buf, 0, size - pos);
+			size -= pos;
+		}
+
+		/**
+		 * 所有数据写入完成
+		 *
+		 * @throws StorageException
+		 *             数据不完整
+		 */
+		public void finish() {
+			if (!finished) {
+				throw new StorageException("unexpected end of int map snapshot");
+			}
+		}
+
+		/**
+		 * 当前缓冲的容量，用于观察内存占用
+		 *
+		 * @return 字节数
+		 */
+		int capacity() {
+			return buf.length;
+		}
+	}
+
+	/**
+	 * 可直接访问内部数组的输出缓冲
+	 */
+	private static class BlockOutput extends ByteArrayOutputStream {
+
+		BlockOutput() {
+			super(64 * 1024);
+		}
+
+		byte[] buf() {
+			return buf;
+		}
+	}
+
+	/**
+	 * 可扩容的写缓冲
+	 */
+	private static class Buffer {
+
+		private byte[] data;
+
+		private int size = 0;
+
+		Buffer(int capacity) {
+			this.data = new byte[capacity];
+		}
+
+		void reset() {
+			size = 0;
+		}
+
+		private void ensure(int n) {
+			if (size + n > data.length) {
+				data = Arrays.copyOf(data, Math.max(size + n, data.length * 2));
+			}
+		}
+
+		void putVarint(int value) {
+			ensure(5);
+			while ((value & ~0x7F) != 0) {
+				data[size++] = (byte) (value & 0x7F | 0x80);
+				value >>>= 7;
+			}
+			data[size++] = (byte) value;
+		}
+
+		void putInt(int value) {
+			ensure(4);
+			data[size++] = (byte) (value >>> 24);
+			data[size++] = (byte) (value >>> 16);
+			data[size++] = (byte) (value >>> 8);
+			data[size++] = (byte) value;
+		}
+
+		void put(byte[] bytes, int len) {
+			ensure(len);
+			System.arraycopy(bytes, 0, data, size, len);
+			size += len;
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package com.gill.consensus.raftplus.example.intmap;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+import com.gill.consensus.raftplus.apis.SnapshotReader;
+import com.gill.consensus.raftplus.exception.StorageException;
+
+/**
+ * IntMapSnapshotReader 从时间点视图边读边编码，只缓冲一个块。顺序读取时只编码一遍，偏移回退时重新编码
+ *
+ * @author gill
+ * @version 2023/09/20
+ **/
+class IntMapSnapshotReader implements SnapshotReader {
+
+	private final Map<String, Integer> view;
+
+	private final long applyTerm;
+
+	private final int applyIdx;
+
+	private final IntMapSnapshotCodec codec;
+
+	private IntMapSnapshotCodec.EncodeStream in;
+
+	private long position;
+
+	private long size = -1;
+
+	IntMapSnapshotReader(Map<String, Integer> view, long applyTerm, int applyIdx, IntMapSnapshotCodec codec) {
+		this.view = view;
+		this.applyTerm = applyTerm;
+		this.applyIdx = applyIdx;
+		this.codec = codec;
+	}
+
+	@Override
+	public long getApplyTerm() {
+		return applyTerm;
+	}
+
+	@Override
+	public int getApplyIdx() {
+		return applyIdx;
+	}
+
+	@Override
+	public long size() {
+		if (size < 0) {
+			try {
+				size = codec.encoder(view).skip(Long.MAX_VALUE);
+			} catch (IOException e) {
+				throw new StorageException("encode int map snapshot failed", e);
+			}
+		}
+		return size;
+	}
+
+	@Override
+	public byte[] read(long offset, int len) {
+		try {
+			if (in == null || offset < position) {
+				in = codec.encoder(view);
+				position = 0;
+			}
+			position += in.skip(offset - position);
+			byte[] chunk = new byte[len];
+			int n = 0;
+			int k;
+			while (n < len && (k = in.read(chunk, n, len - n)) > 0) {
+				n += k;
+			}
+			position += n;
+			return n == len ? chunk : Arrays.copyOf(chunk, n);
+		} catch (IOException e) {
+			throw new StorageException("encode int map snapshot failed", e);
+		}
+	}
+
+	/**
+	 * 当前缓冲的容量，用于观察内存占用
+	 *
+	 * @return 字节数
+	 */
+	int capacity() {
+		return in == null ? 0 : in.capacity();
+	}
+
+	@Override
+	public void close() {
+		in = null;
+	}
+}
@@ -0,0 +1,56 @@
+package com.gill.consensus.raftplus.example.intmap;
+
+import com.gill.consensus.raftplus.apis.SnapshotWriter;
+import com.gill.consensus.raftplus.common.CowBucketMap;
+
+/**
+ * IntMapSnapshotWriter 分块到达时增量解码到新的 map，全部写入后再替换，只缓冲尚未凑满的块
+ *
+ * @author gill
+ * @version 2023/09/20
+ **/
+class IntMapSnapshotWriter implements SnapshotWriter {
+
+	private final IntMapDataStorage dataStorage;
+
+	private final long applyTerm;
+
+	private final int applyIdx;
+
+	private CowBucketMap<String, Integer> map = new CowBucketMap<>();
+
+	private final IntMapSnapshotCodec.Decoder decoder;
+
+	IntMapSnapshotWriter(IntMapDataStorage dataStorage, long applyTerm, int applyIdx, IntMapSnapshotCodec codec) {
+		this.dataStorage = dataStorage;
+		this.applyTerm = applyTerm;
+		this.applyIdx = applyIdx;
+		this.decoder = codec.decoder(map::put);
+	}
+
+	@Override
+	public void write(byte[] chunk) {
+		decoder.write(chunk);
+	}
+
+	@Override
+	public void finish() {
+		decoder.finish();
+		dataStorage.install(applyTerm, applyIdx, map);
+		map = null;
+	}
+
+	/**
+	 * 当前缓冲的容量，用于观察内存占用
+	 *
+	 * @return 字节数
+	 */
+	int capacity() {
+		return decoder.capacity();
+	}
+
+	@Override
+	public void close() {
+		map = null;
+	}
+}
@@ -0,0 +1,31 @@
+package com.gill.consensus.raftplus.exception;
+
+/**
+ * OverloadedException 未完成的提案超过上限，提案被拒绝，客户端应稍后重试
+ *
+ * @author gill
+ * @version 2023/09/20
+ **/
+public class OverloadedException extends ProposeException {
+
+	public OverloadedException() {
+		super();
+	}
+
+	public OverloadedException(String message) {
+		super(message);
+	}
+
+	public OverloadedException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+	public OverloadedException(Throwable cause) {
+		super(cause);
+	}
+
+	protected OverloadedException(String message, Throwable cause, boolean enableSuppression,
+			boolean writableStackTrace) {
+		super(message, cause, enableSuppression, writableStackTrace);
+	}
+}
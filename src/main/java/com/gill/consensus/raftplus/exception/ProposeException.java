@@ -0,0 +1,31 @@
+package com.gill.consensus.raftplus.exception;
+
+/**
+ * ProposeException 提案未能提交，例如节点不是 leader 或 leader 已卸任
+ *
+ * @author gill
+ * @version 2023/09/20
+ **/
+public class ProposeException extends RuntimeException {
+
+	public ProposeException() {
+		super();
+	}
+
+	public ProposeException(String message) {
+		super(message);
+	}
+
+	public ProposeException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+	public ProposeException(Throwable cause) {
+		super(cause);
+	}
+
+	protected ProposeException(String message, Throwable cause, boolean enableSuppression,
+			boolean writableStackTrace) {
+		super(message, cause, enableSuppression, writableStackTrace);
+	}
+}
@@ -0,0 +1,31 @@
+package com.gill.consensus.raftplus.exception;
+
+/**
+ * StorageException
+ *
+ * @author gill
+ * @version 2023/09/19
+ **/
+public class StorageException extends RuntimeException {
+
+	public StorageException() {
+		super();
+	}
+
+	public StorageException(String message) {
+		super(message);
+	}
+
+	public StorageException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+	public StorageException(Throwable cause) {
+		super(cause);
+	}
+
+	protected StorageException(String message, Throwable cause, boolean enableSuppression,
+			boolean writableStackTrace) {
+		super(message, cause, enableSuppression, writableStackTrace);
+	}
+}
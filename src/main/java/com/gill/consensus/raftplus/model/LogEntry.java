@@ -1,8 +1,10 @@
 package com.gill.consensus.raftplus.model;
 
+import java.nio.charset.StandardCharsets;
+
 import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
 import lombok.Getter;
-import lombok.ToString;
 
 /**
  * LogEntity
@@ -12,12 +14,33 @@ import lombok.ToString;
  **/
 @Getter
 @AllArgsConstructor
-@ToString
+@EqualsAndHashCode
 public class LogEntry {
 
 	private int index;
 
 	private long term;
 
-	private String command;
+	/**
+	 * 命令的二进制内容
+	 */
+	private byte[] payload;
+
+	public LogEntry(int index, long term, String command) {
+		this(index, term, command.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * 以 UTF-8 字符串形式获取命令
+	 *
+	 * @return 命令
+	 */
+	public String getCommand() {
+		return new String(payload, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public String toString() {
+		return "LogEntry(index=" + index + ", term=" + term + ", payload=" + payload.length + " bytes)";
+	}
 }
@@ -0,0 +1,27 @@
+package com.gill.consensus.raftplus.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * ProposeResult 提案提交并应用后的结果
+ *
+ * @author gill
+ * @version 2023/09/20
+ **/
+@Getter
+@AllArgsConstructor
+@ToString
+public class ProposeResult {
+
+	/**
+	 * 日志索引
+	 */
+	private int index;
+
+	/**
+	 * 状态机应用命令的返回结果，no-op 日志为 null
+	 */
+	private String result;
+}
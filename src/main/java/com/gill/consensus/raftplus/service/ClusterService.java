@@ -1,5 +1,11 @@
 package com.gill.consensus.raftplus.service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.gill.consensus.raftplus.model.ProposeResult;
+
 /**
  * ClusterService
  *
@@ -15,5 +21,54 @@ public interface ClusterService extends NodeService {
 	 *            更新操作
 	 * @return 日志索引位置
 	 */
-	int propose(String command);
+	int propose(byte[] command);
+
+	/**
+	 * 提案，命令以 UTF-8 编码
+	 *
+	 * @param command
+	 *            更新操作
+	 * @return 日志索引位置
+	 */
+	default int propose(String command) {
+		return propose(command.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * 异步提案，不阻塞调用线程
+	 *
+	 * @param command
+	 *            更新操作
+	 * @return 日志提交并应用后完成，结果为日志索引和应用结果；提案失败时异常完成
+	 */
+	CompletableFuture<ProposeResult> proposeAsync(byte[] command);
+
+	/**
+	 * 异步提案，命令以 UTF-8 编码
+	 *
+	 * @param command
+	 *            更新操作
+	 * @return 日志提交并应用后完成，结果为日志索引和应用结果；提案失败时异常完成
+	 */
+	default CompletableFuture<ProposeResult> proposeAsync(String command) {
+		return proposeAsync(command.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * 批量异步提案，整批日志分配连续的索引并一起持久化和复制
+	 *
+	 * @param commands
+	 *            更新操作
+	 * @return 与 commands 一一对应的 future，结果为日志索引和应用结果
+	 */
+	List<CompletableFuture<ProposeResult>> proposeBatchAsync(List<byte[]> commands);
+
+	/**
+	 * 批量提案，命令以 UTF-8 编码
+	 *
+	 * @param commands
+	 *            更新操作
+	 * @return 与 commands 一一对应的日志索引位置，失败为 -1
+	 */
+	List<Integer> proposeBatch(List<String> commands);
 }
@@ -5,8 +5,11 @@ import com.gill.consensus.raftplus.entity.AppendLogEntriesParam;
 import com.gill.consensus.raftplus.entity.AppendLogReply;
 import com.gill.consensus.raftplus.entity.PreVoteParam;
 import com.gill.consensus.raftplus.entity.ReplicateSnapshotParam;
+import com.gill.consensus.raftplus.entity.ReplicateSnapshotReply;
 import com.gill.consensus.raftplus.entity.Reply;
 import com.gill.consensus.raftplus.entity.RequestVoteParam;
+import com.gill.consensus.raftplus.entity.SnapshotDigestParam;
+import com.gill.consensus.raftplus.entity.SnapshotDigestReply;
 
 /**
  * NodeService
@@ -99,9 +102,9 @@ public interface InnerNodeService extends NodeService {
 	 *            参数
 	 * @return 响应
 	 */
-	default Reply replicateSnapshot(ReplicateSnapshotParam param) {
+	default ReplicateSnapshotReply replicateSnapshot(ReplicateSnapshotParam param) {
 		if (!ready()) {
-			return new AppendLogReply(false, -1);
+			return new ReplicateSnapshotReply(false, -1);
 		}
 		return Utils.cost(() -> doReplicateSnapshot(param), "replicate-snapshot");
 	}
@@ -113,7 +116,30 @@ public interface InnerNodeService extends NodeService {
 	 *            参数
 	 * @return 响应
 	 */
-	Reply doReplicateSnapshot(ReplicateSnapshotParam param);
+	ReplicateSnapshotReply doReplicateSnapshot(ReplicateSnapshotParam param);
+
+	/**
+	 * 按分块计算当前快照的摘要，用于增量同步快照
+	 *
+	 * @param param
+	 *            参数
+	 * @return 响应
+	 */
+	default SnapshotDigestReply snapshotDigest(SnapshotDigestParam param) {
+		if (!ready()) {
+			return new SnapshotDigestReply(false, -1);
+		}
+		return Utils.cost(() -> doSnapshotDigest(param), "snapshot-digest");
+	}
+
+	/**
+	 * 按分块计算当前快照的摘要，用于增量同步快照
+	 *
+	 * @param param
+	 *            参数
+	 * @return 响应
+	 */
+	SnapshotDigestReply doSnapshotDigest(SnapshotDigestParam param);
 
 	/**
 	 * toString
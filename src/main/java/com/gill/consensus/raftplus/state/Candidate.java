@@ -11,9 +11,9 @@ import com.gill.consensus.raftplus.entity.Reply;
 import com.gill.consensus.raftplus.entity.RequestVoteParam;
 import com.gill.consensus.raftplus.machine.RaftEvent;
 import com.gill.consensus.raftplus.machine.RaftEventParams;
+import com.gill.consensus.raftplus.model.LogEntry;
 import com.gill.consensus.raftplus.service.InnerNodeService;
 
-import javafx.util.Pair;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -61,10 +61,10 @@ public class Candidate {
 
 	private static Reply doVote(Node self, InnerNodeService follower, long term) {
 		LogManager logManager = self.getLogManager();
-		Pair<Long, Integer> lastLog = logManager.lastLog();
+		LogEntry lastLog = logManager.lastLog();
 		int nodeId = self.getID();
-		long lastLogTerm = lastLog.getKey();
-		int lastLogIdx = lastLog.getValue();
+		long lastLogTerm = lastLog.getTerm();
+		int lastLogIdx = lastLog.getIndex();
 		return follower.requestVote(new RequestVoteParam(nodeId, term, lastLogTerm, lastLogIdx));
 	}
 }
@@ -7,6 +7,7 @@ import com.gill.consensus.raftplus.LogManager;
 import com.gill.consensus.raftplus.Node;
 import com.gill.consensus.raftplus.ProposeHelper;
 import com.gill.consensus.raftplus.common.Utils;
+import com.gill.consensus.raftplus.config.RaftConfig;
 import com.gill.consensus.raftplus.entity.AppendLogEntriesParam;
 import com.gill.consensus.raftplus.entity.AppendLogReply;
 import com.gill.consensus.raftplus.entity.Reply;
@@ -38,9 +39,18 @@ public class Leader {
 		self.getSchedulers().setHeartbeatScheduler(() -> {
 			List<InnerNodeService> followers = self.getFollowers();
 			log.debug("broadcast heartbeat");
-			boolean success = Utils.majorityCall(followers,
-					follower -> doHeartbeat(selfId, term, follower, self::unstable), Reply::isSuccess, heartbeatPool,
-					"heartbeat");
+			ProposeHelper proposeHelper = self.getProposeHelper();
+			RaftConfig config = self.getConfig();
+			boolean success = Utils.majorityCall(followers, follower -> {
+
+				// 复制流量已刷新 follower 的选举超时，视为本轮心跳成功
+				if (config.isHeartbeatSuppression()
+						&& proposeHelper.suppressHeartbeat(follower.getID(), config.getHeartbeatInterval())) {
+					return new Reply(true, term);
+				}
+				return doHeartbeat(selfId, term, proposeHelper.heartbeatCommitIdx(follower.getID()), follower,
+						self::unstable);
+			}, Reply::isSuccess, heartbeatPool, "heartbeat");
 			if (!success) {
 				log.warn("broadcast heartbeat failed");
 				self.stepDown();
@@ -48,8 +58,11 @@ public class Leader {
 		}, self.getConfig(), selfId);
 	}
 
-	private static Reply doHeartbeat(int nodeId, long term, InnerNodeService follower, Runnable extraFunc) {
-		AppendLogEntriesParam param = AppendLogEntriesParam.builder(nodeId, term).build();
+	private static Reply doHeartbeat(int nodeId, long term, int commitIdx, InnerNodeService follower,
+			Runnable extraFunc) {
+
+		// 携带提交索引，空闲时 follower 也能在一个心跳周期内应用已提交的日志
+		AppendLogEntriesParam param = AppendLogEntriesParam.builder(nodeId, term).commitIdx(commitIdx).build();
 		AppendLogReply reply = new AppendLogReply(false, -1);
 		try {
 			reply = follower.appendLogEntries(param);
@@ -83,7 +96,7 @@ public class Leader {
 	 *            节点
 	 */
 	public static void noOp(Node self) {
-		if (self.propose(Utils.NO_OP) >= 0) {
+		if (self.propose(Utils.NO_OP_PAYLOAD) >= 0) {
 			self.stable();
 		}
 	}
@@ -98,7 +111,7 @@ public class Leader {
 		log.debug("init propose helper");
 		ProposeHelper proposeHelper = self.getProposeHelper();
 		LogManager logManager = self.getLogManager();
-		int lastLogIdx = logManager.lastLog().getValue();
+		int lastLogIdx = logManager.lastLog().getIndex();
 		proposeHelper.start(self, self.getFollowers(), lastLogIdx);
 	}
 
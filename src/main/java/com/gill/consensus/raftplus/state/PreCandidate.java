@@ -11,9 +11,9 @@ import com.gill.consensus.raftplus.entity.PreVoteParam;
 import com.gill.consensus.raftplus.entity.Reply;
 import com.gill.consensus.raftplus.machine.RaftEvent;
 import com.gill.consensus.raftplus.machine.RaftEventParams;
+import com.gill.consensus.raftplus.model.LogEntry;
 import com.gill.consensus.raftplus.service.InnerNodeService;
 
-import javafx.util.Pair;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -53,11 +53,11 @@ public class PreCandidate {
 
 	private static Reply doPreVote(Node self, InnerNodeService follower, RaftEventParams params) {
 		LogManager logManager = self.getLogManager();
-		Pair<Long, Integer> lastLog = logManager.lastLog();
+		LogEntry lastLog = logManager.lastLog();
 		int nodeId = self.getID();
 		long term = params.getTerm();
-		long lastLogTerm = lastLog.getKey();
-		int lastLogIdx = lastLog.getValue();
+		long lastLogTerm = lastLog.getTerm();
+		int lastLogIdx = lastLog.getIndex();
 		return follower.preVote(new PreVoteParam(nodeId, term, lastLogTerm, lastLogIdx));
 	}
 }
@@ -0,0 +1,279 @@
+package com.gill.consensus.raftplus.storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.gill.consensus.raftplus.apis.LogStorage;
+import com.gill.consensus.raftplus.exception.StorageException;
+import com.gill.consensus.raftplus.model.LogEntry;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * FileLogStorage 基于分段追加写文件的日志存储
+ * <p>
+ * 每个段文件按段内第一条日志的索引命名，创建时预分配固定大小，写满后滚动到新的段。按索引读取时先定位段，再通过段的稀疏索引定位文件偏移
+ *
+ * @author gill
+ * @version 2023/09/19
+ **/
+@Slf4j
+public class FileLogStorage implements LogStorage, Closeable {
+
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	private final File dir;
+
+	private final int segmentSize;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final Lock readLock = lock.readLock();
+
+	private final Lock writeLock = lock.writeLock();
+
+	/**
+	 * baseIdx -> 日志段
+	 */
+	private final TreeMap<Integer, LogSegment> segments = new TreeMap<>();
+
+	public FileLogStorage(String path) {
+		this(path, DEFAULT_SEGMENT_SIZE);
+	}
+
+	public FileLogStorage(String path, int segmentSize) {
+		this.dir = new File(path);
+		this.segmentSize = segmentSize;
+		if (!dir.exists() && !dir.mkdirs()) {
+			throw new StorageException("can not create log directory: " + path);
+		}
+		load();
+	}
+
+	/**
+	 * 打开所有的段文件，丢弃损坏尾部之后的数据
+	 */
+	private void load() {
+		File[] files = dir.listFiles((d, name) -> name.endsWith(LogSegment.SUFFIX));
+		if (files == null) {
+			return;
+		}
+		Arrays.sort(files, (f1, f2) -> Integer.compare(LogSegment.parseBaseIdx(f1), LogSegment.parseBaseIdx(f2)));
+		boolean broken = false;
+		for (File file : files) {
+			try {
+				if (broken || !segments.isEmpty() && segments.lastEntry().getValue().getLastIdx() + 1 != LogSegment
+						.parseBaseIdx(file)) {
+					log.warn("discard log segment {} after a broken one", file.getName());
+					broken = true;
+					if (!file.delete() || LogSegment.indexFile(file).exists() && !LogSegment.indexFile(file).delete()) {
+						log.warn("delete log segment {} failed", file.getName());
+					}
+					continue;
+				}
+				LogSegment segment = LogSegment.open(file);
+				segments.put(segment.getBaseIdx(), segment);
+			} catch (IOException e) {
+				throw new StorageException("open log segment " + file.getName() + " failed", e);
+			}
+		}
+		log.debug("load log segments: {}", segments.values());
+	}
+
+	private int lastIdx() {
+		return segments.isEmpty() ? -1 : segments.lastEntry().getValue().getLastIdx();
+	}
+
+	@Override
+	public int firstIdx() {
+		readLock.lock();
+		try {
+			return segments.isEmpty() ? -1 : segments.firstKey();
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * 只读取最新的 n 条日志，更早的日志由 LogManager 按需读取
+	 */
+	@Override
+	public List<LogEntry> loadFromApplyIdx(int n, int applyIdx) {
+		readLock.lock();
+		try {
+			int lastIdx = lastIdx();
+			if (lastIdx < 0) {
+				return Collections.emptyList();
+			}
+			int start = Math.max(segments.firstKey(), lastIdx - n + 1);
+			return doRead(start, lastIdx + 1);
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	public void write(LogEntry logEntry) {
+		writeLock.lock();
+		try {
+			LogSegment segment = prepare(logEntry);
+			segment.flush();
+		} catch (IOException e) {
+			throw new StorageException("write log " + logEntry.getIndex() + " failed", e);
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	@Override
+	public void write(List<LogEntry> logEntries) {
+		if (logEntries.isEmpty()) {
+			return;
+		}
+		writeLock.lock();
+		try {
+			LogSegment last = null;
+			for (LogEntry logEntry : logEntries) {
+				LogSegment segment = prepare(logEntry);
+				if (last != null && last != segment) {
+					last.flush();
+				}
+				last = segment;
+			}
+			last.flush();
+		} catch (IOException e) {
+			throw new StorageException("write logs " + logEntries.get(0).getIndex() + " failed", e);
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	/**
+	 * 写入日志，不刷盘
+	 *
+	 * @return 写入的日志段
+	 */
+	private LogSegment prepare(LogEntry logEntry) throws IOException {
+		int idx = logEntry.getIndex();
+		int lastIdx = lastIdx();
+		if (lastIdx >= 0 && idx <= lastIdx) {
+
+			// 覆盖写，先删除 idx 及之后的日志
+			truncateSuffix(idx);
+		} else if (lastIdx >= 0 && idx > lastIdx + 1) {
+
+			// 日志不连续（如安装快照），丢弃旧的日志
+			log.warn("discontinuous log index: {}, last index: {}, discard all logs", idx, lastIdx);
+			truncateSuffix(firstIdx());
+		}
+		if (LogSegment.recordSize(logEntry) > segmentSize) {
+			throw new StorageException(String.format("log %s is larger than segment size %s", idx, segmentSize));
+		}
+		LogSegment segment = segments.isEmpty() ? roll(idx) : segments.lastEntry().getValue();
+		if (!segment.append(logEntry)) {
+			segment.flush();
+			segment = roll(idx);
+			segment.append(logEntry);
+		}
+		return segment;
+	}
+
+	private LogSegment roll(int baseIdx) throws IOException {
+		LogSegment segment = LogSegment.create(dir, baseIdx, segmentSize);
+		segments.put(baseIdx, segment);
+		log.debug("roll new log segment {}", segment);
+		return segment;
+	}
+
+	private void truncateSuffix(int idx) throws IOException {
+		Iterator<Map.Entry<Integer, LogSegment>> it = segments.tailMap(idx, true).entrySet().iterator();
+		while (it.hasNext()) {
+			it.next().getValue().delete();
+			it.remove();
+		}
+		Map.Entry<Integer, LogSegment> floor = segments.floorEntry(idx);
+		if (floor != null) {
+			floor.getValue().truncateFrom(idx);
+			floor.getValue().flush();
+		}
+	}
+
+	@Override
+	public long truncatePrefix(int idx) {
+		writeLock.lock();
+		try {
+			long bytes = 0;
+
+			// 只删除整个段都在 idx 之前的文件，最后一个段始终保留
+			Iterator<LogSegment> it = segments.headMap(idx, true).values().iterator();
+			while (it.hasNext()) {
+				LogSegment segment = it.next();
+				if (segment.getLastIdx() >= idx || segment == segments.lastEntry().getValue()) {
+					break;
+				}
+				bytes += segment.fileBytes();
+				segment.delete();
+				it.remove();
+				log.debug("delete log segment {}", segment);
+			}
+			return bytes;
+		} catch (IOException e) {
+			throw new StorageException("truncate logs before " + idx + " failed", e);
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	@Override
+	public List<LogEntry> read(int start, int len) {
+		readLock.lock();
+		try {
+			return doRead(start, start + len);
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	private List<LogEntry> doRead(int start, int end) {
+		List<LogEntry> res = new ArrayList<>(Math.max(0, Math.min(end, lastIdx() + 1) - start));
+		Integer from = segments.floorKey(start);
+		for (LogSegment segment : segments.tailMap(from == null ? start : from, true).values()) {
+			if (segment.getBaseIdx() >= end) {
+				break;
+			}
+			segment.read(start, end, res);
+		}
+		return res;
+	}
+
+	@Override
+	public void close() {
+		writeLock.lock();
+		try {
+			for (LogSegment segment : segments.values()) {
+				segment.close();
+			}
+			segments.clear();
+		} catch (IOException e) {
+			throw new StorageException("close log storage failed", e);
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "FileLogStorage{dir=" + dir + ", segments=" + segments.values() + "}";
+	}
+}
@@ -0,0 +1,121 @@
+package com.gill.consensus.raftplus.storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import com.gill.consensus.raftplus.apis.MetaStorage;
+import com.gill.consensus.raftplus.exception.StorageException;
+import com.gill.consensus.raftplus.model.PersistentProperties;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * FileMetaStorage 双缓冲的元数据文件
+ * <p>
+ * 文件包含两个固定大小的槽位：| seq(8) | term(8) | votedFor(4) | hasVotedFor(4) | crc32(4) |，每次写入序号递增并轮流写入两个槽位，
+ * 写入后刷盘。读取时取校验通过且序号最大的槽位，写了一半的槽位不会破坏上一次写入的结果
+ *
+ * @author gill
+ * @version 2023/09/20
+ **/
+@Slf4j
+public class FileMetaStorage implements MetaStorage, Closeable {
+
+	private static final int SLOT_SIZE = 28;
+
+	private static final int BODY_SIZE = SLOT_SIZE - 4;
+
+	private final File file;
+
+	private final FileChannel channel;
+
+	private long seq = 0;
+
+	public FileMetaStorage(String path) {
+		this.file = new File(path);
+		File dir = file.getAbsoluteFile().getParentFile();
+		if (dir != null && !dir.exists() && !dir.mkdirs()) {
+			throw new StorageException("can not create meta directory: " + dir);
+		}
+		try {
+			this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+		} catch (IOException e) {
+			throw new StorageException("open meta file " + path + " failed", e);
+		}
+
+		// 恢复序号，避免覆盖最新的槽位
+		read();
+	}
+
+	@Override
+	public synchronized void write(PersistentProperties properties) {
+		long nextSeq = seq + 1;
+		ByteBuffer buffer = ByteBuffer.allocate(SLOT_SIZE);
+		Integer votedFor = properties.getVotedFor();
+		buffer.putLong(nextSeq).putLong(properties.getTerm()).putInt(votedFor == null ? 0 : votedFor)
+				.putInt(votedFor == null ? 0 : 1);
+		buffer.putInt(crc(buffer.array()));
+		buffer.flip();
+		try {
+			long pos = (nextSeq & 1) * SLOT_SIZE;
+			while (buffer.hasRemaining()) {
+				pos += channel.write(buffer, pos);
+			}
+			channel.force(false);
+			seq = nextSeq;
+		} catch (IOException e) {
+			throw new StorageException("write meta file " + file + " failed", e);
+		}
+	}
+
+	@Override
+	public synchronized PersistentProperties read() {
+		PersistentProperties properties = new PersistentProperties();
+		long maxSeq = 0;
+		for (int slot = 0; slot < 2; slot++) {
+			ByteBuffer buffer = ByteBuffer.allocate(SLOT_SIZE);
+			try {
+				long pos = (long) slot * SLOT_SIZE;
+				int n;
+				while (buffer.hasRemaining() && (n = channel.read(buffer, pos)) > 0) {
+					pos += n;
+				}
+			} catch (IOException e) {
+				throw new StorageException("read meta file " + file + " failed", e);
+			}
+			if (buffer.hasRemaining() || buffer.getInt(BODY_SIZE) != crc(buffer.array())) {
+				continue;
+			}
+			long slotSeq = buffer.getLong(0);
+			if (slotSeq > maxSeq) {
+				maxSeq = slotSeq;
+				properties.setTerm(buffer.getLong(8));
+				properties.setVotedFor(buffer.getInt(20) == 0 ? null : buffer.getInt(16));
+			}
+		}
+		seq = Math.max(seq, maxSeq);
+		log.debug("read meta file {}, seq: {}, properties: {}", file, maxSeq, properties);
+		return properties;
+	}
+
+	private static int crc(byte[] slot) {
+		CRC32 crc32 = new CRC32();
+		crc32.update(slot, 0, BODY_SIZE);
+		return (int) crc32.getValue();
+	}
+
+	@Override
+	public void close() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			throw new StorageException("close meta file " + file + " failed", e);
+		}
+	}
+}
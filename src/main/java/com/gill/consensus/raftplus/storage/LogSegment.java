@@ -0,0 +1,450 @@
+package com.gill.consensus.raftplus.storage;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.List;
+
+import com.gill.consensus.raftplus.common.LogEntryCodec;
+import com.gill.consensus.raftplus.model.LogEntry;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * LogSegment 预分配固定大小的日志段文件，通过 MappedByteBuffer 读写
+ * <p>
+ * 记录格式见 {@link LogEntryCodec}，length 为 0 表示段的末尾
+ * <p>
+ * 每个段有一个同名的稀疏索引文件，每隔 {@link #INDEX_INTERVAL} 字节记录一项：| index - baseIdx (4) | position(4) |，position 为 0
+ * 表示索引的末尾。读取和截断时先二分查找索引再顺序扫描，索引只是加速查找的提示，打开时会逐项校验
+ * <p>
+ * 索引项先记录在内存中，{@link #flush()} 刷完数据后才写入索引文件并刷盘，索引文件中的项只指向已持久化的数据，
+ * 崩溃后不会越过之前未落盘或写了一半的记录
+ *
+ * @author gill
+ * @version 2023/09/19
+ **/
+@Slf4j
+class LogSegment implements Closeable {
+
+	static final String SUFFIX = ".log";
+
+	static final String INDEX_SUFFIX = ".idx";
+
+	/**
+	 * 相邻两个索引项之间至少间隔的字节数
+	 */
+	static final int INDEX_INTERVAL = 4096;
+
+	private static final int INDEX_ENTRY_SIZE = 8;
+
+	static final int RECORD_HEADER = LogEntryCodec.RECORD_HEADER;
+
+	static final int ENTRY_HEADER = LogEntryCodec.ENTRY_HEADER;
+
+	private final File file;
+
+	@Getter
+	private final int baseIdx;
+
+	private final FileChannel channel;
+
+	private final MappedByteBuffer buffer;
+
+	private final int capacity;
+
+	private final FileChannel indexChannel;
+
+	private final MappedByteBuffer index;
+
+	/**
+	 * 索引项：日志索引 - baseIdx
+	 */
+	private final int[] indexIdx;
+
+	/**
+	 * 索引项：记录的位置
+	 */
+	private final int[] indexPos;
+
+	private int indexCount = 0;
+
+	/**
+	 * 已写入索引文件的索引项数量
+	 */
+	private int durableCount = 0;
+
+	/**
+	 * 最后一个索引项指向的位置
+	 */
+	private int indexedPos = 0;
+
+	private int writePos = 0;
+
+	@Getter
+	private int lastIdx;
+
+	private LogSegment(File file, int baseIdx, FileChannel channel, MappedByteBuffer buffer,
+			FileChannel indexChannel, MappedByteBuffer index) {
+		this.file = file;
+		this.baseIdx = baseIdx;
+		this.channel = channel;
+		this.buffer = buffer;
+		this.capacity = buffer.capacity();
+		this.indexChannel = indexChannel;
+		this.index = index;
+		this.indexIdx = new int[index.capacity() / INDEX_ENTRY_SIZE];
+		this.indexPos = new int[indexIdx.length];
+		this.lastIdx = baseIdx - 1;
+	}
+
+	static String fileName(int baseIdx) {
+		return String.format("%020d%s", baseIdx, SUFFIX);
+	}
+
+	/**
+	 * 日志段对应的索引文件
+	 *
+	 * @param file
+	 *            日志段文件
+	 * @return 索引文件
+	 */
+	static File indexFile(File file) {
+		String name = file.getName();
+		return new File(file.getParentFile(), name.substring(0, name.length() - SUFFIX.length()) + INDEX_SUFFIX);
+	}
+
+	private static int indexSize(long capacity) {
+		return (int) (capacity / INDEX_INTERVAL + 1) * INDEX_ENTRY_SIZE;
+	}
+
+	static int parseBaseIdx(File file) {
+		String name = file.getName();
+		return Integer.parseInt(name.substring(0, name.length() - SUFFIX.length()));
+	}
+
+	/**
+	 * 创建并预分配日志段
+	 *
+	 * @param dir
+	 *            目录
+	 * @param baseIdx
+	 *            段内第一条日志的索引
+	 * @param size
+	 *            段大小
+	 * @return 日志段
+	 * @throws IOException
+	 *             IO异常
+	 */
+	static LogSegment create(File dir, int baseIdx, int size) throws IOException {
+		File file = new File(dir, fileName(baseIdx));
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+				RandomAccessFile indexRaf = new RandomAccessFile(indexFile(file), "rw")) {
+			raf.setLength(size);
+			indexRaf.setLength(0);
+			indexRaf.setLength(indexSize(size));
+		}
+		return map(file, baseIdx);
+	}
+
+	/**
+	 * 打开已存在的日志段，并恢复写位置
+	 *
+	 * @param file
+	 *            文件
+	 * @return 日志段
+	 * @throws IOException
+	 *             IO异常
+	 */
+	static LogSegment open(File file) throws IOException {
+		LogSegment segment = map(file, parseBaseIdx(file));
+		segment.recover();
+		return segment;
+	}
+
+	private static LogSegment map(File file, int baseIdx) throws IOException {
+		FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+		FileChannel indexChannel = null;
+		try {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+			indexChannel = new RandomAccessFile(indexFile(file), "rw").getChannel();
+			MappedByteBuffer index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexSize(channel.size()));
+			return new LogSegment(file, baseIdx, channel, buffer, indexChannel, index);
+		} catch (IOException e) {
+			channel.close();
+			if (indexChannel != null) {
+				indexChannel.close();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * 扫描日志段，定位最后一条完整的记录，并清除崩溃时写了一半的尾部
+	 *
+	 * @return 是否存在损坏的尾部
+	 */
+	boolean recover() {
+		recoverIndex();
+
+		// 从最后一个有效的索引项开始扫描，并补齐之后的索引
+		int pos = indexedPos;
+		int expectIdx = entryIdx(indexCount - 1);
+		int recordLen;
+		while ((recordLen = checkRecord(pos, expectIdx)) > 0) {
+			maybeIndex(expectIdx, pos);
+			pos += recordLen;
+			expectIdx++;
+		}
+		writePos = pos;
+		lastIdx = expectIdx - 1;
+		boolean torn = pos + RECORD_HEADER <= capacity && (buffer.getInt(pos) != 0 || buffer.getInt(pos + 4) != 0);
+		if (torn) {
+			log.warn("log segment {} has a torn tail at position {}, last index: {}", file.getName(), pos, lastIdx);
+			zero(pos, capacity);
+		}
+
+		// 扫描到的记录可能还在页缓存中，先刷数据再写入补齐的索引
+		if (torn || indexCount > durableCount) {
+			flush();
+		}
+		return torn;
+	}
+
+	/**
+	 * 校验记录
+	 *
+	 * @return 记录总长度，记录不完整或已损坏时返回 -1
+	 */
+	private int checkRecord(int pos, int expectIdx) {
+		int recordLen = LogEntryCodec.check(buffer, pos, capacity);
+		if (recordLen < 0 || LogEntryCodec.index(buffer, pos) != expectIdx) {
+			return -1;
+		}
+		return recordLen;
+	}
+
+	/**
+	 * 加载索引，丢弃第一个无效项及之后的索引
+	 */
+	private void recoverIndex() {
+		int maxCount = indexIdx.length;
+		int prevPos = 0;
+		int count = 0;
+		while (count < maxCount) {
+			int idx = index.getInt(count * INDEX_ENTRY_SIZE);
+			int pos = index.getInt(count * INDEX_ENTRY_SIZE + 4);
+			if (pos <= prevPos || checkRecord(pos, baseIdx + idx) < 0) {
+				break;
+			}
+			indexIdx[count] = idx;
+			indexPos[count] = pos;
+			prevPos = pos;
+			count++;
+		}
+		indexCount = count;
+		durableCount = count;
+		indexedPos = prevPos;
+		boolean dirty = false;
+		for (int i = count; i < maxCount && (index.getLong(i * INDEX_ENTRY_SIZE) != 0); i++) {
+			index.putLong(i * INDEX_ENTRY_SIZE, 0);
+			dirty = true;
+		}
+		if (dirty) {
+			index.force();
+		}
+	}
+
+	/**
+	 * 第 i 个索引项指向的日志索引，i 为 -1 时表示段的开头
+	 */
+	private int entryIdx(int i) {
+		return i < 0 ? baseIdx : baseIdx + indexIdx[i];
+	}
+
+	private int entryPos(int i) {
+		return i < 0 ? 0 : indexPos[i];
+	}
+
+	/**
+	 * 查找日志索引小于等于 idx 的最后一个索引项
+	 *
+	 * @return 索引项的序号，没有时返回 -1
+	 */
+	private int floorEntry(int idx) {
+		int lo = 0;
+		int hi = indexCount - 1;
+		int res = -1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			if (entryIdx(mid) <= idx) {
+				res = mid;
+				lo = mid + 1;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		return res;
+	}
+
+	private void maybeIndex(int idx, int pos) {
+		if (pos - indexedPos < INDEX_INTERVAL) {
+			return;
+		}
+		indexIdx[indexCount] = idx - baseIdx;
+		indexPos[indexCount] = pos;
+		indexCount++;
+		indexedPos = pos;
+	}
+
+	private void zero(int from, int to) {
+		for (int pos = from; pos < to; pos++) {
+			buffer.put(pos, (byte) 0);
+		}
+	}
+
+	/**
+	 * 记录所需的空间
+	 *
+	 * @param logEntry
+	 *            日志
+	 * @return 字节数
+	 */
+	static int recordSize(LogEntry logEntry) {
+		return LogEntryCodec.recordSize(logEntry);
+	}
+
+	/**
+	 * 段文件和索引文件占用的字节数
+	 *
+	 * @return 字节数
+	 */
+	long fileBytes() {
+		return (long) capacity + index.capacity();
+	}
+
+	boolean isEmpty() {
+		return lastIdx < baseIdx;
+	}
+
+	/**
+	 * 追加日志，调用方需保证索引连续
+	 *
+	 * @param logEntry
+	 *            日志
+	 * @return 空间不足时返回 false
+	 */
+	boolean append(LogEntry logEntry) {
+		if (LogEntryCodec.recordSize(logEntry) > capacity - writePos) {
+			return false;
+		}
+		int pos = writePos;
+		writePos += LogEntryCodec.encode(logEntry, buffer, pos);
+		lastIdx = logEntry.getIndex();
+		maybeIndex(lastIdx, pos);
+		return true;
+	}
+
+	/**
+	 * 读取 [start, end) 范围内的日志
+	 *
+	 * @param start
+	 *            开始索引
+	 * @param end
+	 *            结束索引
+	 * @param out
+	 *            结果
+	 */
+	void read(int start, int end, List<LogEntry> out) {
+		if (start > lastIdx) {
+			return;
+		}
+		int entry = floorEntry(start);
+		int pos = entryPos(entry);
+		for (int idx = entryIdx(entry); idx <= lastIdx && idx < end; idx++) {
+			int len = buffer.getInt(pos);
+			if (idx >= start) {
+				out.add(LogEntryCodec.decode(buffer, pos));
+			}
+			pos += RECORD_HEADER + len;
+		}
+	}
+
+	/**
+	 * 删除 idx 及之后的日志
+	 *
+	 * @param idx
+	 *            索引
+	 */
+	void truncateFrom(int idx) {
+		if (idx > lastIdx) {
+			return;
+		}
+		int entry = floorEntry(idx);
+		int pos = entryPos(entry);
+		for (int i = entryIdx(entry); i < idx; i++) {
+			pos += RECORD_HEADER + buffer.getInt(pos);
+		}
+		zero(pos, writePos);
+		writePos = pos;
+		lastIdx = Math.max(idx, baseIdx) - 1;
+
+		// 删除指向被截断位置的索引项，已落盘的项先于新数据刷盘删除，避免崩溃后指向被覆盖的位置
+		while (indexCount > 0 && entryPos(indexCount - 1) >= pos) {
+			indexCount--;
+		}
+		indexedPos = entryPos(indexCount - 1);
+		if (durableCount > indexCount) {
+			for (int i = indexCount; i < durableCount; i++) {
+				index.putLong(i * INDEX_ENTRY_SIZE, 0);
+			}
+			index.force();
+			durableCount = indexCount;
+		}
+	}
+
+	/**
+	 * 刷盘，数据刷盘后再写入新增的索引项并刷盘
+	 */
+	void flush() {
+		buffer.force();
+		if (durableCount < indexCount) {
+			for (int i = durableCount; i < indexCount; i++) {
+				index.putInt(i * INDEX_ENTRY_SIZE, indexIdx[i]);
+				index.putInt(i * INDEX_ENTRY_SIZE + 4, indexPos[i]);
+			}
+			index.force();
+			durableCount = indexCount;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+		channel.close();
+		indexChannel.close();
+	}
+
+	/**
+	 * 关闭并删除段文件
+	 *
+	 * @throws IOException
+	 *             IO异常
+	 */
+	void delete() throws IOException {
+		channel.close();
+		indexChannel.close();
+		Files.deleteIfExists(file.toPath());
+		Files.deleteIfExists(indexFile(file).toPath());
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s[%s, %s]", file.getName(), baseIdx, lastIdx);
+	}
+}
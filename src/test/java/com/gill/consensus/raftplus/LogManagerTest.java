@@ -0,0 +1,229 @@
+package com.gill.consensus.raftplus;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.gill.consensus.raftplus.apis.EmptyLogStorage;
+import com.gill.consensus.raftplus.config.RaftConfig;
+import com.gill.consensus.raftplus.exception.StorageException;
+import com.gill.consensus.raftplus.model.LogEntry;
+import com.gill.consensus.raftplus.storage.FileLogStorage;
+
+/**
+ * LogManagerTest
+ *
+ * @author gill
+ * @version 2023/09/19
+ **/
+public class LogManagerTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	public void testGroupCommit() {
+		FileLogStorage storage = new FileLogStorage(dir.toString());
+		LogManager logManager = new LogManager(storage, new RaftConfig.LogConfig());
+		final int concurrency = 16;
+		final int n = 1000;
+		ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+		long start = System.nanoTime();
+		CompletableFuture<?>[] futures = IntStream.range(0, concurrency).mapToObj(t -> CompletableFuture.runAsync(() -> {
+			for (int i = 0; i < n; i++) {
+				LogEntry logEntry = logManager.createLog(1, (t + "-" + i).getBytes(StandardCharsets.UTF_8));
+				logManager.sync(logEntry.getIndex());
+				Assertions.assertTrue(logManager.getDurableIdx() >= logEntry.getIndex());
+			}
+		}, pool)).toArray(CompletableFuture[]::new);
+		CompletableFuture.allOf(futures).join();
+		long cost = System.nanoTime() - start;
+		pool.shutdown();
+		System.out.printf("group commit %d logs cost %dms, %.0f ops/s%n", concurrency * n, cost / 1000000,
+				concurrency * n * 1e9 / cost);
+
+		List<LogEntry> logs = storage.read(1, concurrency * n);
+		Assertions.assertEquals(concurrency * n, logs.size());
+		for (int i = 0; i < logs.size(); i++) {
+			Assertions.assertEquals(i + 1, logs.get(i).getIndex());
+		}
+		storage.close();
+	}
+
+	@Test
+	public void testEvictToStorage() {
+		FileLogStorage storage = new FileLogStorage(dir.toString());
+		RaftConfig.LogConfig logConfig = new RaftConfig.LogConfig();
+		logConfig.setCacheCapacity(100);
+		LogManager logManager = new LogManager(storage, logConfig);
+		for (int i = 1; i <= 1000; i++) {
+			logManager.sync(logManager.createLog(1, String.valueOf(i).getBytes(StandardCharsets.UTF_8)).getIndex());
+		}
+		Assertions.assertTrue(logManager.println().contains("cache: [901, 1000], size: 100"));
+		Assertions.assertEquals("10", logManager.getLog(10).getCommand());
+		Assertions.assertEquals("950", logManager.getLog(950).getCommand());
+		List<LogEntry> logs = logManager.getLogs(850, 1001);
+		Assertions.assertEquals(151, logs.size());
+		for (int i = 0; i < logs.size(); i++) {
+			Assertions.assertEquals(850 + i, logs.get(i).getIndex());
+		}
+
+		// 覆盖写冷数据时重置缓存
+		logManager.appendLog(new LogEntry(500, 2, "500"));
+		logManager.sync(500);
+		Assertions.assertEquals(500, logManager.lastLog().getIndex());
+		Assertions.assertEquals(500, logManager.getLogs(1, 1001).size());
+		storage.close();
+	}
+
+	@Test
+	public void testTruncatePrefix() {
+		FileLogStorage storage = new FileLogStorage(dir.toString(), 4096);
+		RaftConfig.LogConfig logConfig = new RaftConfig.LogConfig();
+		logConfig.setCacheCapacity(100);
+		LogManager logManager = new LogManager(storage, logConfig);
+		for (int i = 1; i <= 1000; i++) {
+			logManager.sync(logManager.createLog(1, String.valueOf(i).getBytes(StandardCharsets.UTF_8)).getIndex());
+		}
+		int segments = dir.toFile().listFiles().length;
+		Assertions.assertEquals(800, logManager.truncatePrefix(800));
+		Assertions.assertEquals(0, logManager.truncatePrefix(700));
+		Assertions.assertTrue(dir.toFile().listFiles().length < segments);
+		Assertions.assertNull(logManager.getLog(799));
+		Assertions.assertEquals("800", logManager.getLog(800).getCommand());
+		List<LogEntry> logs = logManager.getLogs(0, 1001);
+		Assertions.assertEquals(201, logs.size());
+		Assertions.assertEquals(800, logs.get(0).getIndex());
+		Assertions.assertEquals(1000, storage.read(800, 1000).get(200).getIndex());
+		storage.close();
+	}
+
+	@Test
+	public void testTermBoundary() {
+		FileLogStorage storage = new FileLogStorage(dir.toString(), 4096);
+		RaftConfig.LogConfig logConfig = new RaftConfig.LogConfig();
+		logConfig.setCacheCapacity(50);
+		LogManager logManager = new LogManager(storage, logConfig);
+		for (int i = 1; i <= 300; i++) {
+			long term = i <= 100 ? 1 : i <= 250 ? 2 : 5;
+			logManager.sync(logManager.createLog(term, String.valueOf(i).getBytes(StandardCharsets.UTF_8)).getIndex());
+		}
+		Assertions.assertEquals(1, logManager.firstIdxOfTerm(80));
+		Assertions.assertEquals(101, logManager.firstIdxOfTerm(250));
+		Assertions.assertEquals(251, logManager.firstIdxOfTerm(300));
+		Assertions.assertEquals(250, logManager.lastIdxOfTerm(2, 300));
+		Assertions.assertEquals(180, logManager.lastIdxOfTerm(2, 180));
+		Assertions.assertEquals(100, logManager.lastIdxOfTerm(1, 300));
+		Assertions.assertEquals(-1, logManager.lastIdxOfTerm(3, 300));
+		Assertions.assertEquals(-1, logManager.lastIdxOfTerm(5, 250));
+
+		// 已被删除的日志不参与查找
+		logManager.truncatePrefix(120);
+		Assertions.assertEquals(120, logManager.firstIdxOfTerm(200));
+		Assertions.assertEquals(-1, logManager.lastIdxOfTerm(1, 300));
+		storage.close();
+	}
+
+	/**
+	 * 第一次批量写入失败，之后正常写入
+	 */
+	private static class FailOnceLogStorage extends EmptyLogStorage {
+
+		private final List<Integer> written = new ArrayList<>();
+
+		private boolean failed = false;
+
+		@Override
+		public void write(List<LogEntry> logEntries) {
+			if (!failed) {
+				failed = true;
+				throw new StorageException("disk error");
+			}
+			logEntries.forEach(logEntry -> written.add(logEntry.getIndex()));
+		}
+	}
+
+	@Test
+	public void testSyncFailure() {
+		FailOnceLogStorage storage = new FailOnceLogStorage();
+		LogManager logManager = new LogManager(storage, new RaftConfig.LogConfig());
+		logManager.createLog(1, "1".getBytes(StandardCharsets.UTF_8));
+		Assertions.assertThrows(StorageException.class, () -> logManager.sync(1));
+		Assertions.assertEquals(0, logManager.getDurableIdx());
+
+		// 写入失败的日志留在待写队列，与之后的日志一起按顺序写入
+		logManager.createLog(1, "2".getBytes(StandardCharsets.UTF_8));
+		logManager.sync(2);
+		Assertions.assertEquals(2, logManager.getDurableIdx());
+		Assertions.assertEquals(Arrays.asList(1, 2), storage.written);
+		logManager.sync(1);
+	}
+
+	@Test
+	public void testAppendEvictedLog() {
+		FileLogStorage storage = new FileLogStorage(dir.toString());
+		RaftConfig.LogConfig logConfig = new RaftConfig.LogConfig();
+		logConfig.setCacheCapacity(10);
+		LogManager logManager = new LogManager(storage, logConfig);
+		for (int i = 1; i <= 20; i++) {
+			logManager.appendLog(new LogEntry(i, 1, String.valueOf(i)));
+		}
+		logManager.sync(20);
+		Assertions.assertTrue(logManager.println().contains("cache: [11, 20]"));
+
+		// 重复收到已淘汰出缓存的相同日志时不删除之后的日志
+		logManager.appendLog(new LogEntry(3, 1, "3"));
+		Assertions.assertEquals(20, logManager.lastLog().getIndex());
+		Assertions.assertEquals(20, logManager.getDurableIdx());
+
+		// 任期不一致时才删除冲突位置及之后的日志
+		logManager.appendLog(new LogEntry(3, 2, "x"));
+		logManager.sync(3);
+		Assertions.assertEquals(3, logManager.lastLog().getIndex());
+		Assertions.assertEquals("x", logManager.getLog(3).getCommand());
+		Assertions.assertEquals("2", logManager.getLog(2).getCommand());
+		Assertions.assertEquals(3, storage.read(1, 20).size());
+		storage.close();
+	}
+
+	@Test
+	public void testInitLoadsTail() {
+		FileLogStorage storage = new FileLogStorage(dir.toString());
+		for (int i = 1; i <= 1000; i++) {
+			storage.write(new LogEntry(i, 1, String.valueOf(i)));
+		}
+		RaftConfig.LogConfig logConfig = new RaftConfig.LogConfig();
+		logConfig.setLoadLen(30);
+		LogManager logManager = new LogManager(storage, logConfig);
+
+		// 只加载最新的日志，之前的日志按需从存储读取
+		logManager.init(0);
+		Assertions.assertTrue(logManager.println().contains("start: 1, durable: 1000, cache: [971, 1000]"));
+		Assertions.assertEquals(1000, logManager.lastLog().getIndex());
+		Assertions.assertEquals("1", logManager.getLog(1).getCommand());
+		Assertions.assertEquals(100, logManager.getLogs(1, 101).size());
+		storage.close();
+	}
+
+	@Test
+	public void testNoEvictWithoutStorage() {
+		RaftConfig.LogConfig logConfig = new RaftConfig.LogConfig();
+		logConfig.setCacheCapacity(10);
+		LogManager logManager = new LogManager(new EmptyLogStorage(), logConfig);
+		for (int i = 1; i <= 100; i++) {
+			logManager.sync(logManager.createLog(1, String.valueOf(i).getBytes(StandardCharsets.UTF_8)).getIndex());
+		}
+		Assertions.assertEquals("5", logManager.getLog(5).getCommand());
+		Assertions.assertEquals(100, logManager.getLogs(1, 101).size());
+	}
+}
@@ -0,0 +1,93 @@
+package com.gill.consensus.raftplus;
+
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.gill.consensus.raftplus.apis.MetaStorage;
+import com.gill.consensus.raftplus.model.PersistentProperties;
+import com.gill.consensus.raftplus.storage.FileMetaStorage;
+
+/**
+ * MetaDataManagerTest
+ *
+ * @author gill
+ * @version 2023/09/20
+ **/
+public class MetaDataManagerTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	public void testVoteOncePerTerm() {
+		String path = dir.resolve("meta").toString();
+		FileMetaStorage storage = new FileMetaStorage(path);
+		MetaDataManager metaDataManager = new MetaDataManager(storage);
+		metaDataManager.init();
+		Assertions.assertTrue(metaDataManager.acceptHigherOrSameTerm(2));
+		Assertions.assertTrue(metaDataManager.voteFor(2, 1));
+		Assertions.assertFalse(metaDataManager.voteFor(2, 3));
+		storage.close();
+
+		// 重启后同一任期不能再投给其他节点
+		storage = new FileMetaStorage(path);
+		metaDataManager = new MetaDataManager(storage);
+		metaDataManager.init();
+		Assertions.assertEquals(2, metaDataManager.getTerm());
+		Assertions.assertFalse(metaDataManager.voteFor(2, 3));
+		Assertions.assertTrue(metaDataManager.voteFor(2, 1));
+		Assertions.assertEquals(3, metaDataManager.increaseTerm(2, 3));
+		storage.close();
+	}
+
+	@Test
+	public void testCoalesceWrites() {
+		AtomicInteger writes = new AtomicInteger();
+		MetaStorage storage = new MetaStorage() {
+
+			private volatile PersistentProperties persisted = new PersistentProperties();
+
+			@Override
+			public void write(PersistentProperties properties) {
+				writes.incrementAndGet();
+				try {
+					Thread.sleep(2);
+				} catch (InterruptedException ignored) {
+				}
+				persisted = properties;
+			}
+
+			@Override
+			public PersistentProperties read() {
+				return persisted;
+			}
+		};
+		MetaDataManager metaDataManager = new MetaDataManager(storage);
+		metaDataManager.init();
+		final int concurrency = 16;
+		final int n = 200;
+		ExecutorService pool = Executors.newFixedThreadPool(concurrency);
+		CompletableFuture<?>[] futures = IntStream.range(0, concurrency).mapToObj(t -> CompletableFuture.runAsync(() -> {
+			for (int i = 0; i < n; i++) {
+				long term = metaDataManager.getTerm() + 1;
+				metaDataManager.acceptHigherOrSameTerm(term);
+
+				// 返回时已持久化
+				Assertions.assertTrue(storage.read().getTerm() >= term);
+			}
+		}, pool)).toArray(CompletableFuture[]::new);
+		CompletableFuture.allOf(futures).join();
+		pool.shutdown();
+		Assertions.assertEquals(metaDataManager.getTerm(), storage.read().getTerm());
+		System.out.printf("%d term bumps, %d writes%n", concurrency * n, writes.get());
+		Assertions.assertTrue(writes.get() < concurrency * n);
+	}
+}
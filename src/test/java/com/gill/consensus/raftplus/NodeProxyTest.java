@@ -0,0 +1,272 @@
+package com.gill.consensus.raftplus;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.gill.consensus.raftplus.common.LogEntryCodec;
+import com.gill.consensus.raftplus.entity.AppendLogEntriesParam;
+import com.gill.consensus.raftplus.entity.AppendLogReply;
+import com.gill.consensus.raftplus.model.LogEntry;
+
+/**
+ * NodeProxyTest
+ *
+ * @author gill
+ * @version 2023/09/20
+ **/
+public class NodeProxyTest {
+
+	/**
+	 * 总是追加成功的 follower
+	 */
+	private static class AcceptNode extends Node {
+
+		private final AtomicInteger appended = new AtomicInteger();
+
+		private final AtomicInteger maxBatchBytes = new AtomicInteger();
+
+		AcceptNode(int id) {
+			super(id);
+		}
+
+		@Override
+		public boolean ready() {
+			return true;
+		}
+
+		@Override
+		public AppendLogReply doAppendLogEntries(AppendLogEntriesParam param) {
+			appended.addAndGet(param.getLogs().size());
+			int bytes = param.getLogs().stream().mapToInt(LogEntryCodec::recordSize).sum();
+			maxBatchBytes.accumulateAndGet(bytes, Math::max);
+			return new AppendLogReply(true, param.getTerm());
+		}
+	}
+
+	/**
+	 * 等待 follower 确认到 idx
+	 */
+	private static void awaitMatch(NodeProxy proxy, int idx) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 30000;
+		while (proxy.getMatchIdx() < idx) {
+			Assertions.assertTrue(System.currentTimeMillis() < deadline, "matchIdx: " + proxy.getMatchIdx());
+			Thread.sleep(1);
+		}
+	}
+
+	@Test
+	public void testWakeUpOnAppend() {
+		Node self = new Node(1);
+		AcceptNode follower = new AcceptNode(2);
+		NodeProxy proxy = new NodeProxy(self, follower, 0);
+		proxy.start();
+		try {
+			final int n = 100;
+			long start = System.nanoTime();
+			for (int i = 0; i < n; i++) {
+				LogEntry logEntry = self.getLogManager().createLog(0, ("" + i).getBytes(StandardCharsets.UTF_8));
+				proxy.appendLog(logEntry);
+				while (proxy.getMatchIdx() < logEntry.getIndex()) {
+					Thread.yield();
+				}
+			}
+			long avg = (System.nanoTime() - start) / n / 1000;
+			System.out.printf("sequential append avg latency: %dus%n", avg);
+			Assertions.assertEquals(n, follower.appended.get());
+
+			// 轮询间隔为 50ms，被唤醒时单条日志的延迟应远小于轮询间隔
+			Assertions.assertTrue(avg < 10000, "avg latency " + avg + "us");
+		} finally {
+			proxy.stop();
+		}
+	}
+
+	/**
+	 * 只接受与本地日志连续的批次，并在第一次收到 preLogIdx 超过 failAt 的批次时拒绝一次
+	 */
+	private static class OrderedNode extends Node {
+
+		private final int failAt;
+
+		private int lastIdx = 0;
+
+		private boolean failed = false;
+
+		OrderedNode(int id, int failAt) {
+			super(id);
+			this.failAt = failAt;
+		}
+
+		@Override
+		public boolean ready() {
+			return true;
+		}
+
+		@Override
+		public synchronized AppendLogReply doAppendLogEntries(AppendLogEntriesParam param) {
+			int pre = param.getPreLogIdx();
+			if (pre > lastIdx || (!failed && pre > failAt)) {
+				failed |= pre > failAt;
+				return new AppendLogReply(false, param.getTerm(), -1, lastIdx + 1);
+			}
+			lastIdx = Math.max(lastIdx, pre + param.getLogs().size());
+			return new AppendLogReply(true, param.getTerm());
+		}
+	}
+
+	@Test
+	public void testPipelineRewind() {
+		Node self = new Node(1);
+		self.getConfig().setReplicateWindow(4);
+		OrderedNode follower = new OrderedNode(2, 500);
+		NodeProxy proxy = new NodeProxy(self, follower, 0);
+		proxy.start();
+		ExecutorService pool = Executors.newFixedThreadPool(16);
+		try {
+			final int n = 2000;
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < n; i++) {
+				futures.add(pool.submit(() -> proxy
+						.appendLog(self.getLogManager().createLog(0, "x".getBytes(StandardCharsets.UTF_8)))));
+			}
+			for (Future<?> future : futures) {
+				future.get(30, TimeUnit.SECONDS);
+			}
+			awaitMatch(proxy, n);
+			Assertions.assertTrue(follower.failed);
+			Assertions.assertEquals(n, follower.lastIdx);
+		} catch (Exception e) {
+			Assertions.fail(e);
+		} finally {
+			pool.shutdownNow();
+			proxy.stop();
+		}
+	}
+
+	@Test
+	public void testByteBoundedBatch() {
+		Node self = new Node(1);
+		self.getConfig().getBatchConfig().setMaxBytes(1024 * 1024);
+		AcceptNode follower = new AcceptNode(2);
+		NodeProxy proxy = new NodeProxy(self, follower, 0);
+		final int n = 40;
+		try {
+			for (int i = 0; i < n; i++) {
+				proxy.appendLog(self.getLogManager().createLog(0, new byte[300 * 1024]));
+			}
+
+			// 日志全部入队后再启动，保证每批都能凑满
+			proxy.start();
+			awaitMatch(proxy, n);
+			Assertions.assertEquals(n, follower.appended.get());
+			Assertions.assertTrue(follower.maxBatchBytes.get() <= 1024 * 1024);
+			ReplicateBatcher batcher = proxy.getBatcher();
+			Assertions.assertEquals(n, batcher.getEntries());
+			Assertions.assertEquals(n / 3 + 1, batcher.getBatches());
+			Assertions.assertEquals(n / 3, batcher.getHistogram()[1]);
+		} catch (Exception e) {
+			Assertions.fail(e);
+		} finally {
+			proxy.stop();
+		}
+	}
+
+	@Test
+	public void testContactTracking() throws InterruptedException {
+		Node self = new Node(1);
+		AcceptNode follower = new AcceptNode(2);
+		NodeProxy proxy = new NodeProxy(self, follower, 0);
+		long start = System.currentTimeMillis();
+		Assertions.assertFalse(proxy.contactedSince(start));
+		self.setCommittedIdx(5);
+		proxy.start();
+		try {
+			final int n = 10;
+			for (int i = 0; i < n; i++) {
+				proxy.appendLog(self.getLogManager().createLog(0, "x".getBytes(StandardCharsets.UTF_8)));
+			}
+			awaitMatch(proxy, n);
+			Assertions.assertTrue(proxy.contactedSince(start));
+			Assertions.assertEquals(5, proxy.getKnownCommitIdx());
+			Assertions.assertFalse(proxy.contactedSince(System.currentTimeMillis() + 1));
+		} finally {
+			proxy.stop();
+		}
+	}
+
+	/**
+	 * 积压超过上限的日志不放入队列，复制时从 LogManager 补读
+	 */
+	@Test
+	public void testShedBacklog() throws InterruptedException {
+		Node self = new Node(1);
+		self.getConfig().setFollowerBacklogEntries(10);
+		AcceptNode follower = new AcceptNode(2);
+		NodeProxy proxy = new NodeProxy(self, follower, 0);
+		final int n = 100;
+		for (int i = 0; i < n; i++) {
+			proxy.appendLog(self.getLogManager().createLog(0, "x".getBytes(StandardCharsets.UTF_8)));
+		}
+		Assertions.assertEquals(n, proxy.getLag());
+		proxy.start();
+		try {
+			awaitMatch(proxy, n);
+			Assertions.assertEquals(n, follower.appended.get());
+			Assertions.assertEquals(0, proxy.getLag());
+		} finally {
+			proxy.stop();
+		}
+	}
+
+	@Test
+	public void testShedFromSentIdx() {
+		Node self = new Node(1);
+		self.getConfig().setFollowerBacklogEntries(10);
+		for (int i = 0; i < 50; i++) {
+			self.getLogManager().createLog(0, "x".getBytes(StandardCharsets.UTF_8));
+		}
+
+		// 新 leader 的 matchIdx 为 0，积压只统计 preLogIdx 之后的日志
+		NodeProxy proxy = new NodeProxy(self, new AcceptNode(2), 50);
+		for (int i = 0; i < 10; i++) {
+			proxy.appendLog(self.getLogManager().createLog(0, "x".getBytes(StandardCharsets.UTF_8)));
+		}
+		Assertions.assertTrue(proxy.println().contains("shedIdx: 0"));
+		proxy.appendLog(self.getLogManager().createLog(0, "x".getBytes(StandardCharsets.UTF_8)));
+		Assertions.assertTrue(proxy.println().contains("shedIdx: 61"));
+	}
+
+	@Test
+	public void testShedBacklogBytes() throws InterruptedException {
+		Node self = new Node(1);
+		self.getConfig().setFollowerBacklogBytes(10 * 1024);
+		AcceptNode follower = new AcceptNode(2);
+		NodeProxy proxy = new NodeProxy(self, follower, 0);
+		final int n = 100;
+		for (int i = 0; i < n; i++) {
+			proxy.appendLog(self.getLogManager().createLog(0, new byte[1024]));
+		}
+
+		// 条数未超过上限，按字节数丢弃
+		Assertions.assertTrue(proxy.println().contains("shedIdx: " + n));
+		Assertions.assertTrue(proxy.println().contains("queued bytes: " + 9 * LogEntryCodec
+				.recordSize(self.getLogManager().getLog(1))));
+		proxy.start();
+		try {
+			awaitMatch(proxy, n);
+			Assertions.assertEquals(n, follower.appended.get());
+			Assertions.assertTrue(proxy.println().contains("queued bytes: 0"));
+		} finally {
+			proxy.stop();
+		}
+	}
+}
@@ -0,0 +1,423 @@
+package com.gill.consensus.raftplus;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.gill.consensus.raftplus.apis.EmptyDataStorage;
+import com.gill.consensus.raftplus.apis.EmptyLogStorage;
+import com.gill.consensus.raftplus.apis.EmptyMetaStorage;
+import com.gill.consensus.raftplus.apis.LogStorage;
+import com.gill.consensus.raftplus.entity.AppendLogEntriesParam;
+import com.gill.consensus.raftplus.entity.AppendLogReply;
+import com.gill.consensus.raftplus.exception.OverloadedException;
+import com.gill.consensus.raftplus.exception.ProposeException;
+import com.gill.consensus.raftplus.model.LogEntry;
+import com.gill.consensus.raftplus.model.ProposeResult;
+import com.gill.consensus.raftplus.service.InnerNodeService;
+
+/**
+ * ProposeHelperTest
+ *
+ * @author gill
+ * @version 2023/09/20
+ **/
+public class ProposeHelperTest {
+
+	/**
+	 * accept 为 false 时一直不响应，直到复制线程被中断
+	 */
+	private static class FollowerNode extends Node {
+
+		private final boolean accept;
+
+		FollowerNode(int id, boolean accept) {
+			super(id);
+			this.accept = accept;
+		}
+
+		@Override
+		public boolean ready() {
+			return true;
+		}
+
+		@Override
+		public AppendLogReply doAppendLogEntries(AppendLogEntriesParam param) {
+			if (!accept) {
+				try {
+					Thread.sleep(Long.MAX_VALUE);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return new AppendLogReply(false, param.getTerm());
+			}
+			return new AppendLogReply(true, param.getTerm());
+		}
+	}
+
+	/**
+	 * 按应用顺序记录命令，并以命令本身作为应用结果
+	 */
+	private static class EchoDataStorage extends EmptyDataStorage {
+
+		private final List<String> applied = Collections.synchronizedList(new ArrayList<>());
+
+		@Override
+		public String apply(byte[] command) {
+			String cmd = new String(command, StandardCharsets.UTF_8);
+			applied.add(cmd);
+			return cmd;
+		}
+	}
+
+	/**
+	 * 记录每次批量写入的日志条数
+	 */
+	private static class CountingLogStorage extends EmptyLogStorage {
+
+		private final List<Integer> writes = new ArrayList<>();
+
+		@Override
+		public synchronized void write(List<LogEntry> logEntries) {
+			writes.add(logEntries.size());
+		}
+	}
+
+	private static Node leader(EchoDataStorage dataStorage, LogStorage logStorage, boolean... accepts) {
+		Node self = new Node(1, new EmptyMetaStorage(), dataStorage, logStorage);
+		List<InnerNodeService> followers = new ArrayList<>();
+		for (int i = 0; i < accepts.length; i++) {
+			followers.add(new FollowerNode(i + 2, accepts[i]));
+		}
+		self.getApplyPipeline().start();
+		self.getProposeHelper().start(self, followers, 0);
+		return self;
+	}
+
+	private static void stop(Node self) {
+		self.getProposeHelper().clear();
+		self.getApplyPipeline().stop();
+	}
+
+	private static byte[] command(int i) {
+		return String.valueOf(i).getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testQuorumIdx() {
+		Assertions.assertEquals(7, ProposeHelper.quorumIdx(new int[]{7}));
+		Assertions.assertEquals(5, ProposeHelper.quorumIdx(new int[]{9, 0, 5}));
+		Assertions.assertEquals(3, ProposeHelper.quorumIdx(new int[]{9, 1, 5, 3}));
+		Assertions.assertEquals(4, ProposeHelper.quorumIdx(new int[]{4, 8, 0, 6, 2}));
+	}
+
+	@Test
+	public void testCommitByQuorum() throws Exception {
+		EchoDataStorage dataStorage = new EchoDataStorage();
+		Node self = leader(dataStorage, new EmptyLogStorage(), true, false);
+		ExecutorService pool = Executors.newFixedThreadPool(16);
+		try {
+			final int n = 1000;
+			List<Future<Integer>> futures = new ArrayList<>();
+			for (int i = 0; i < n; i++) {
+				final int cmd = i;
+				futures.add(pool.submit(() -> self.getProposeHelper().propose(command(cmd))));
+			}
+			for (Future<Integer> future : futures) {
+				Assertions.assertTrue(future.get(30, TimeUnit.SECONDS) > 0);
+			}
+
+			// 一个 follower 无响应时，leader 与另一个 follower 构成多数派
+			Assertions.assertEquals(n, self.getCommittedIdx());
+			Assertions.assertEquals(n, dataStorage.applied.size());
+		} finally {
+			pool.shutdownNow();
+			stop(self);
+		}
+	}
+
+	@Test
+	public void testNoQuorum() {
+		EchoDataStorage dataStorage = new EchoDataStorage();
+		Node self = leader(dataStorage, new EmptyLogStorage(), false, false);
+		try {
+			Assertions.assertEquals(-1, self.getProposeHelper().propose(command(0)));
+			Assertions.assertEquals(0, self.getCommittedIdx());
+			Assertions.assertTrue(dataStorage.applied.isEmpty());
+		} finally {
+			stop(self);
+		}
+	}
+
+	@Test
+	public void testProposeAsync() throws Exception {
+		EchoDataStorage dataStorage = new EchoDataStorage();
+		Node self = leader(dataStorage, new EmptyLogStorage(), true, true);
+		try {
+
+			// 单个线程保持大量提案在途
+			final int n = 5000;
+			List<CompletableFuture<ProposeResult>> futures = new ArrayList<>();
+			for (int i = 0; i < n; i++) {
+				futures.add(self.getProposeHelper().proposeAsync(command(i)));
+			}
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+			for (int i = 0; i < n; i++) {
+				ProposeResult result = futures.get(i).get();
+				Assertions.assertEquals(i + 1, result.getIndex());
+				Assertions.assertEquals(String.valueOf(i), result.getResult());
+			}
+
+			// 按索引顺序应用
+			for (int i = 0; i < n; i++) {
+				Assertions.assertEquals(String.valueOf(i), dataStorage.applied.get(i));
+			}
+			Assertions.assertEquals(n, self.getDataStorage().getApplyIdx());
+			Assertions.assertTrue(self.getApplyPipeline().getBatches() <= n);
+		} finally {
+			stop(self);
+		}
+	}
+
+	@Test
+	public void testFailPendingOnClear() {
+		Node self = leader(new EchoDataStorage(), new EmptyLogStorage(), false, false);
+		CompletableFuture<ProposeResult> future = self.getProposeHelper().proposeAsync(command(0));
+		stop(self);
+		ExecutionException e = Assertions.assertThrows(ExecutionException.class,
+				() -> future.get(30, TimeUnit.SECONDS));
+		Assertions.assertTrue(e.getCause() instanceof ProposeException);
+		Assertions.assertThrows(ExecutionException.class,
+				() -> self.getProposeHelper().proposeAsync(command(1)).get());
+	}
+
+	@Test
+	public void testProposeBatch() throws Exception {
+		CountingLogStorage storage = new CountingLogStorage();
+		Node self = leader(new EchoDataStorage(), storage, true, true);
+		try {
+			final int n = 10000;
+			List<byte[]> commands = new ArrayList<>(n);
+			for (int i = 0; i < n; i++) {
+				commands.add(command(i));
+			}
+			List<CompletableFuture<ProposeResult>> futures = self.getProposeHelper().proposeBatchAsync(commands);
+			Assertions.assertEquals(n, futures.size());
+			for (int i = 0; i < n; i++) {
+				ProposeResult result = futures.get(i).get(30, TimeUnit.SECONDS);
+				Assertions.assertEquals(i + 1, result.getIndex());
+				Assertions.assertEquals(String.valueOf(i), result.getResult());
+			}
+
+			// 整批日志一次写入存储
+			Assertions.assertEquals(Collections.singletonList(n), storage.writes);
+			Assertions.assertEquals(n, self.getCommittedIdx());
+		} finally {
+			stop(self);
+		}
+	}
+
+	/**
+	 * 应用较慢时不影响日志的复制和提交
+	 */
+	@Test
+	public void testSlowApplyDoesNotBlockCommit() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		EchoDataStorage dataStorage = new EchoDataStorage() {
+
+			@Override
+			public String apply(byte[] command) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return super.apply(command);
+			}
+		};
+		Node self = leader(dataStorage, new EmptyLogStorage(), true, true);
+		try {
+			final int n = 100;
+			List<CompletableFuture<ProposeResult>> futures = new ArrayList<>();
+			for (int i = 0; i < n; i++) {
+				futures.add(self.getProposeHelper().proposeAsync(command(i)));
+			}
+			long deadline = System.currentTimeMillis() + 30000;
+			while (self.getCommittedIdx() < n && System.currentTimeMillis() < deadline) {
+				Thread.sleep(1);
+			}
+			Assertions.assertEquals(n, self.getCommittedIdx());
+			Assertions.assertTrue(dataStorage.applied.isEmpty());
+			Assertions.assertFalse(futures.get(0).isDone());
+
+			release.countDown();
+			CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+			Assertions.assertEquals(n, dataStorage.applied.size());
+		} finally {
+			release.countDown();
+			stop(self);
+		}
+	}
+
+	@Test
+	public void testHeartbeatCommitIdx() throws Exception {
+		Node follower = new Node(2) {
+
+			@Override
+			public boolean ready() {
+				return true;
+			}
+
+			@Override
+			public void stepDown(long newTerm, boolean sync) {
+
+				// 状态机未启动，无需切换状态
+			}
+		};
+		Node self = new Node(1, new EmptyMetaStorage(), new EchoDataStorage(), new EmptyLogStorage());
+		self.getApplyPipeline().start();
+		self.getProposeHelper().start(self, Arrays.asList(follower, new FollowerNode(3, false)), 0);
+		try {
+			final int n = 10;
+			for (int i = 0; i < n; i++) {
+				Assertions.assertEquals(i + 1, self.getProposeHelper().propose(command(i)));
+			}
+
+			// 最后一批日志发送时尚未提交，follower 只能从心跳得知
+			Assertions.assertEquals(n, self.getCommittedIdx());
+			Assertions.assertTrue(follower.getCommittedIdx() < n);
+			Assertions.assertEquals(0, self.getProposeHelper().heartbeatCommitIdx(3));
+			int commitIdx = self.getProposeHelper().heartbeatCommitIdx(follower.getID());
+			Assertions.assertEquals(n, commitIdx);
+			follower.appendLogEntries(
+					AppendLogEntriesParam.builder(self.getID(), self.getTerm()).commitIdx(commitIdx).build());
+			Assertions.assertEquals(n, follower.getCommittedIdx());
+		} finally {
+			stop(self);
+		}
+	}
+
+	@Test
+	public void testSuppressHeartbeat() {
+		Node self = leader(new EchoDataStorage(), new EmptyLogStorage(), true, false);
+		ProposeHelper proposeHelper = self.getProposeHelper();
+		try {
+			Assertions.assertFalse(proposeHelper.suppressHeartbeat(2, 1000));
+			Assertions.assertEquals(1, proposeHelper.propose(command(0)));
+			Assertions.assertEquals(2, proposeHelper.propose(command(1)));
+
+			// 第二条日志发送时 follower 已得知索引 1 的提交，但索引 2 的提交仍需心跳送达
+			Assertions.assertFalse(proposeHelper.suppressHeartbeat(2, 1000));
+			Assertions.assertFalse(proposeHelper.suppressHeartbeat(3, 1000));
+			Assertions.assertEquals(0, proposeHelper.getSuppressedHeartbeats());
+		} finally {
+			stop(self);
+		}
+	}
+
+	@Test
+	public void testAdmissionControl() throws Exception {
+		Node self = leader(new EchoDataStorage(), new EmptyLogStorage(), false, false);
+		self.getConfig().getAdmissionConfig().setMaxPendingEntries(10);
+		self.getConfig().getAdmissionConfig().setMaxPendingBytes(100);
+		ProposeHelper proposeHelper = self.getProposeHelper();
+		try {
+
+			// 没有未完成的提案时，超过字节上限的批次也能准入
+			List<byte[]> commands = new ArrayList<>();
+			for (int i = 0; i < 10; i++) {
+				commands.add(new byte[20]);
+			}
+			List<CompletableFuture<ProposeResult>> pending = proposeHelper.proposeBatchAsync(commands);
+			Assertions.assertEquals(10, proposeHelper.getPendingEntries());
+			Assertions.assertEquals(200, proposeHelper.getPendingBytes());
+
+			// 超过上限时直接拒绝，不等待提交超时
+			CompletableFuture<ProposeResult> rejected = proposeHelper.proposeAsync(command(0));
+			Assertions.assertTrue(rejected.isCompletedExceptionally());
+			ExecutionException e = Assertions.assertThrows(ExecutionException.class, rejected::get);
+			Assertions.assertTrue(e.getCause() instanceof OverloadedException);
+			long start = System.currentTimeMillis();
+			Assertions.assertEquals(-1, proposeHelper.propose(command(1)));
+			Assertions.assertTrue(System.currentTimeMillis() - start < 400);
+			Assertions.assertEquals(2, proposeHelper.getRejectedProposals());
+
+			// 等待准入直到超时
+			self.getConfig().getAdmissionConfig().setAdmissionTimeout(100);
+			start = System.currentTimeMillis();
+			Assertions.assertThrows(ExecutionException.class, () -> proposeHelper.proposeAsync(command(2)).get());
+			Assertions.assertTrue(System.currentTimeMillis() - start >= 100);
+			Assertions.assertEquals(3, proposeHelper.getRejectedProposals());
+			Assertions.assertEquals(10, proposeHelper.getPendingEntries());
+
+			// 额度释放后唤醒等待的提案
+			self.getConfig().getAdmissionConfig().setAdmissionTimeout(30000);
+			CompletableFuture<CompletableFuture<ProposeResult>> waiting = CompletableFuture
+					.supplyAsync(() -> proposeHelper.proposeAsync(command(3)));
+			Thread.sleep(50);
+			Assertions.assertFalse(waiting.isDone());
+			stop(self);
+			e = Assertions.assertThrows(ExecutionException.class, () -> waiting.get(30, TimeUnit.SECONDS).get());
+			Assertions.assertFalse(e.getCause() instanceof OverloadedException);
+			for (CompletableFuture<ProposeResult> future : pending) {
+				Assertions.assertTrue(future.isCompletedExceptionally());
+			}
+			Assertions.assertEquals(0, proposeHelper.getPendingEntries());
+			Assertions.assertEquals(0, proposeHelper.getPendingBytes());
+		} finally {
+			stop(self);
+		}
+	}
+
+	/**
+	 * 并行模式下本地刷盘阻塞时 follower 已收到日志，leader 持久化后才计入多数派
+	 */
+	@Test
+	public void testParallelPersist() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		LogStorage storage = new EmptyLogStorage() {
+
+			@Override
+			public void write(List<LogEntry> logEntries) {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		};
+		Node self = leader(new EchoDataStorage(), storage, true, false);
+		self.getConfig().setParallelPersist(true);
+		try {
+			CompletableFuture<ProposeResult> future = self.getProposeHelper().proposeAsync(command(0));
+			long deadline = System.currentTimeMillis() + 30000;
+			while (self.getProposeHelper().getReplicationLags().get(2) > 0
+					&& System.currentTimeMillis() < deadline) {
+				Thread.sleep(1);
+			}
+			Assertions.assertEquals(0, self.getProposeHelper().getReplicationLags().get(2));
+			Assertions.assertEquals(0, self.getLogManager().getDurableIdx());
+			Assertions.assertEquals(0, self.getCommittedIdx());
+			Assertions.assertFalse(future.isDone());
+
+			release.countDown();
+			Assertions.assertEquals(1, future.get(30, TimeUnit.SECONDS).getIndex());
+			Assertions.assertEquals(1, self.getCommittedIdx());
+		} finally {
+			release.countDown();
+			stop(self);
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package com.gill.consensus.raftplus;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.gill.consensus.raftplus.config.RaftConfig;
+
+/**
+ * ReplicateBatcherTest
+ *
+ * @author gill
+ * @version 2023/09/20
+ **/
+public class ReplicateBatcherTest {
+
+	@Test
+	public void testAdaptiveLinger() {
+		RaftConfig.BatchConfig config = new RaftConfig.BatchConfig();
+		config.setMaxLingerMicros(1000);
+		config.setLingerStepMicros(100);
+		ReplicateBatcher batcher = new ReplicateBatcher(config);
+		Assertions.assertTrue(batcher.delay(false, 0) <= 0);
+
+		// 连续凑满时 linger 加倍直到上限
+		for (int i = 0; i < 10; i++) {
+			batcher.record(100, 10000, true, false, false);
+		}
+		Assertions.assertEquals(1000, batcher.getLingerMicros());
+		Assertions.assertEquals(0, batcher.delay(true, 0));
+		Assertions.assertEquals(TimeUnit.MICROSECONDS.toNanos(400), batcher.delay(false, 600000));
+
+		// 等待到期仍未凑满时减半
+		batcher.record(10, 1000, false, true, true);
+		batcher.record(1, 100, false, true, false);
+		Assertions.assertEquals(250, batcher.getLingerMicros());
+		Assertions.assertEquals(0.5, batcher.getLingerHitRate());
+		Assertions.assertEquals(12, batcher.getBatches());
+		Assertions.assertEquals(1, batcher.getHistogram()[0]);
+		Assertions.assertEquals(1, batcher.getHistogram()[3]);
+		Assertions.assertEquals(10, batcher.getHistogram()[6]);
+	}
+}
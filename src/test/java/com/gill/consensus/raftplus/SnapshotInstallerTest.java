@@ -0,0 +1,126 @@
+package com.gill.consensus.raftplus;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.gill.consensus.raftplus.apis.BytesSnapshotReader;
+import com.gill.consensus.raftplus.apis.EmptyDataStorage;
+import com.gill.consensus.raftplus.apis.SnapshotReader;
+import com.gill.consensus.raftplus.entity.ReplicateSnapshotParam;
+import com.gill.consensus.raftplus.model.Snapshot;
+
+/**
+ * SnapshotInstallerTest
+ *
+ * @author gill
+ * @version 2023/09/20
+ **/
+public class SnapshotInstallerTest {
+
+	private static final int CHUNK = 1000;
+
+	private static class CapturedDataStorage extends EmptyDataStorage {
+
+		private byte[] data;
+
+		@Override
+		public void saveSnapshot(byte[] data) {
+			this.data = data;
+		}
+
+		@Override
+		public byte[] getSnapshotData() {
+			return data == null ? new byte[0] : data;
+		}
+	}
+
+	private static ReplicateSnapshotParam chunk(SnapshotReader reader, long offset) {
+		byte[] data = reader.read(offset, CHUNK);
+		return new ReplicateSnapshotParam(1, 1, reader.getApplyIdx(), reader.getApplyTerm(), offset, data,
+				offset + data.length >= reader.size());
+	}
+
+	@Test
+	public void testChunkedInstall() {
+		byte[] data = new byte[10 * CHUNK + 123];
+		new Random(1).nextBytes(data);
+		SnapshotReader reader = new BytesSnapshotReader(new Snapshot(3, 500, data));
+		CapturedDataStorage dataStorage = new CapturedDataStorage();
+		SnapshotInstaller installer = new SnapshotInstaller();
+
+		long offset = 0;
+		for (int i = 0; i < 5; i++) {
+			offset = installer.write(dataStorage, chunk(reader, offset));
+		}
+		Assertions.assertEquals(5 * CHUNK, offset);
+
+		// 重复发送的分块不会被写入，返回期望的偏移量用于续传
+		Assertions.assertEquals(5 * CHUNK, installer.write(dataStorage, chunk(reader, 2 * CHUNK)));
+		Assertions.assertEquals(5 * CHUNK, installer.write(dataStorage, chunk(reader, 0)));
+		while (offset < data.length) {
+			offset = installer.write(dataStorage, chunk(reader, offset));
+		}
+		Assertions.assertArrayEquals(data, dataStorage.data);
+		Assertions.assertEquals(500, dataStorage.getSnapshot().getApplyIdx());
+		Assertions.assertEquals(3, dataStorage.getSnapshot().getApplyTerm());
+	}
+
+	@Test
+	public void testNewerSnapshotRestarts() {
+		SnapshotInstaller installer = new SnapshotInstaller();
+		CapturedDataStorage dataStorage = new CapturedDataStorage();
+		SnapshotReader older = new BytesSnapshotReader(new Snapshot(1, 100, new byte[3 * CHUNK]));
+		SnapshotReader newer = new BytesSnapshotReader(new Snapshot(2, 200, new byte[CHUNK / 2]));
+		Assertions.assertEquals(CHUNK, installer.write(dataStorage, chunk(older, 0)));
+
+		// 中途切换到新的快照时必须从头开始
+		Assertions.assertEquals(0, installer.write(dataStorage,
+				new ReplicateSnapshotParam(1, 1, 200, 2, CHUNK, new byte[0], true)));
+		Assertions.assertNull(dataStorage.data);
+		Assertions.assertEquals(CHUNK / 2, installer.write(dataStorage, chunk(newer, 0)));
+		Assertions.assertEquals(CHUNK / 2, dataStorage.data.length);
+		Assertions.assertEquals(200, dataStorage.getSnapshot().getApplyIdx());
+	}
+
+	@Test
+	public void testDeltaInstall() {
+		byte[] origin = new byte[10 * CHUNK + 123];
+		new Random(1).nextBytes(origin);
+		byte[] latest = origin.clone();
+		latest[3 * CHUNK + 7] ^= 1;
+		latest[latest.length - 1] ^= 1;
+		CapturedDataStorage dataStorage = new CapturedDataStorage();
+		dataStorage.saveSnapshot(2, 400, origin);
+		SnapshotInstaller installer = new SnapshotInstaller();
+
+		// 没有基准快照时无法补齐
+		Assertions.assertEquals(0, installer.write(dataStorage,
+				new ReplicateSnapshotParam(1, 1, 500, 3, 0, new byte[0], CHUNK, false)));
+
+		byte[][] hashes = installer.digest(dataStorage, CHUNK);
+		Assertions.assertEquals(11, hashes.length);
+		SnapshotReader reader = new BytesSnapshotReader(new Snapshot(3, 500, latest));
+		int sent = 0;
+		long offset = 0;
+		while (offset < latest.length) {
+			byte[] chunk = reader.read(offset, CHUNK);
+			boolean done = offset + chunk.length >= latest.length;
+			int idx = (int) (offset / CHUNK);
+			ReplicateSnapshotParam param;
+			if (Arrays.equals(hashes[idx], SnapshotInstaller.hash(chunk))) {
+				param = new ReplicateSnapshotParam(1, 1, 500, 3, offset, new byte[0], chunk.length, done);
+			} else {
+				param = new ReplicateSnapshotParam(1, 1, 500, 3, offset, chunk, done);
+				sent++;
+			}
+			Assertions.assertEquals(offset + chunk.length, installer.write(dataStorage, param));
+			offset += chunk.length;
+		}
+		Assertions.assertEquals(2, sent);
+		Assertions.assertArrayEquals(latest, dataStorage.data);
+		Assertions.assertEquals(500, dataStorage.getSnapshot().getApplyIdx());
+	}
+}
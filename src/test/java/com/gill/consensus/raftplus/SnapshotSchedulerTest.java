@@ -0,0 +1,251 @@
+package com.gill.consensus.raftplus;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.gill.consensus.raftplus.apis.EmptyDataStorage;
+import com.gill.consensus.raftplus.apis.EmptyLogStorage;
+import com.gill.consensus.raftplus.apis.EmptyMetaStorage;
+import com.gill.consensus.raftplus.apis.VersionDataStorage;
+import com.gill.consensus.raftplus.config.RaftConfig;
+import com.gill.consensus.raftplus.exception.StorageException;
+import com.gill.consensus.raftplus.model.LogEntry;
+import com.gill.consensus.raftplus.model.Snapshot;
+import com.gill.consensus.raftplus.storage.FileLogStorage;
+
+/**
+ * SnapshotSchedulerTest
+ *
+ * @author gill
+ * @version 2023/09/20
+ **/
+public class SnapshotSchedulerTest {
+
+	@TempDir
+	Path dir;
+
+	/**
+	 * 假装快照已持久化
+	 */
+	private static class PersistentDataStorage extends EmptyDataStorage {
+
+		@Override
+		public boolean saveSnapshotToFile(Snapshot snapshot) {
+			return true;
+		}
+	}
+
+	/**
+	 * 统计应用的命令条数，快照写入文件并刷盘
+	 */
+	private static class CounterDataStorage extends VersionDataStorage {
+
+		private final File file;
+
+		private long count = 0;
+
+		CounterDataStorage(File file) {
+			this.file = file;
+		}
+
+		@Override
+		public int loadSnapshot() {
+			if (!file.exists()) {
+				return 0;
+			}
+			try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+				long applyTerm = in.readLong();
+				int applyIdx = in.readInt();
+				byte[] data = new byte[in.readInt()];
+				in.readFully(data);
+				saveSnapshot(applyTerm, applyIdx, data);
+				return applyIdx;
+			} catch (IOException e) {
+				throw new StorageException("load snapshot failed", e);
+			}
+		}
+
+		@Override
+		public byte[] getSnapshotData() {
+			return ByteBuffer.allocate(8).putLong(count).array();
+		}
+
+		@Override
+		public String apply(byte[] command) {
+			count++;
+			return null;
+		}
+
+		@Override
+		public boolean saveSnapshotToFile(Snapshot snapshot) {
+			File tmp = new File(file.getPath() + ".tmp");
+			try (FileOutputStream fos = new FileOutputStream(tmp);
+					DataOutputStream out = new DataOutputStream(fos)) {
+				out.writeLong(snapshot.getApplyTerm());
+				out.writeInt(snapshot.getApplyIdx());
+				out.writeInt(snapshot.getData().length);
+				out.write(snapshot.getData());
+				out.flush();
+				fos.getFD().sync();
+			} catch (IOException e) {
+				throw new StorageException("save snapshot failed", e);
+			}
+			return tmp.renameTo(file);
+		}
+
+		@Override
+		public void saveSnapshot(byte[] data) {
+			count = ByteBuffer.wrap(data).getLong();
+		}
+
+		@Override
+		public String println() {
+			return "count: " + count;
+		}
+	}
+
+	private static Node persistentNode() {
+		return new Node(1, new EmptyMetaStorage(), new PersistentDataStorage(), new EmptyLogStorage());
+	}
+
+	private static void commit(Node node, int n) {
+		for (int i = 0; i < n; i++) {
+			LogEntry logEntry = node.getLogManager().createLog(1,
+					("command-" + i).getBytes(StandardCharsets.UTF_8));
+			node.getLogManager().sync(logEntry.getIndex());
+			node.getDataStorage().apply(logEntry.getTerm(), logEntry.getIndex(), logEntry.getPayload());
+			node.setCommittedIdx(logEntry.getIndex());
+		}
+	}
+
+	@Test
+	public void testTriggers() {
+		Node node = persistentNode();
+		RaftConfig.SnapshotConfig config = new RaftConfig.SnapshotConfig();
+		config.setLogEntries(100);
+		config.setLogBytes(0);
+		config.setInterval(0);
+		SnapshotScheduler scheduler = new SnapshotScheduler(node);
+		Assertions.assertNull(scheduler.trigger(config, 1000));
+
+		commit(node, 99);
+		Assertions.assertNull(scheduler.trigger(config, 2000));
+		commit(node, 1);
+		Assertions.assertNotNull(scheduler.trigger(config, 3000));
+		Assertions.assertEquals(100, scheduler.snapshot("test"));
+		Assertions.assertEquals(1, scheduler.getSnapshotCount());
+		Assertions.assertEquals(100, node.getLogManager().getStartIdx());
+		Assertions.assertNull(scheduler.trigger(config, 4000));
+
+		// 按字节数触发
+		config.setLogEntries(0);
+		config.setLogBytes(1000);
+		commit(node, 10);
+		Assertions.assertNull(scheduler.trigger(config, 5000));
+		commit(node, 30);
+		Assertions.assertTrue(scheduler.trigger(config, 6000).startsWith("bytes"));
+		Assertions.assertEquals(40, scheduler.snapshot("test"));
+		Assertions.assertEquals(140, scheduler.getTotalReclaimed());
+	}
+
+	@Test
+	public void testDeferWhenBusy() {
+		Node node = new Node(1);
+		RaftConfig.SnapshotConfig config = new RaftConfig.SnapshotConfig();
+		config.setInterval(1);
+		config.setBusyApplyRate(1000);
+		SnapshotScheduler scheduler = new SnapshotScheduler(node);
+		long now = System.currentTimeMillis();
+		scheduler.trigger(config, now);
+
+		// 1ms 内提交 10 条，速率 10000/s，推迟按时长触发的快照
+		commit(node, 10);
+		Assertions.assertNull(scheduler.trigger(config, now + 1));
+		Assertions.assertTrue(scheduler.trigger(config, now + 1001).startsWith("elapsed"));
+	}
+
+	/**
+	 * 快照未持久化时不删除日志
+	 */
+	@Test
+	public void testKeepLogsWithoutPersistence() {
+		Node node = new Node(1);
+		commit(node, 100);
+		Assertions.assertEquals(-1, node.saveSnapshot());
+		Assertions.assertEquals(0, node.getLogManager().getStartIdx());
+		Assertions.assertEquals(100, node.getLogManager().getLogs(1, 101).size());
+	}
+
+	/**
+	 * 记录快照实际覆盖的应用索引，而不是保存前的提交索引
+	 */
+	@Test
+	public void testRecordSnapshotIdx() {
+		Node node = persistentNode();
+		RaftConfig.SnapshotConfig config = new RaftConfig.SnapshotConfig();
+		config.setLogEntries(10);
+		config.setLogBytes(0);
+		config.setInterval(0);
+		SnapshotScheduler scheduler = new SnapshotScheduler(node);
+		commit(node, 90);
+
+		// 已提交但尚未应用的日志
+		for (int i = 0; i < 10; i++) {
+			LogEntry logEntry = node.getLogManager().createLog(1, "pending".getBytes(StandardCharsets.UTF_8));
+			node.getLogManager().sync(logEntry.getIndex());
+		}
+		node.setCommittedIdx(100);
+		Assertions.assertEquals(90, scheduler.snapshot("test"));
+		Assertions.assertEquals(90, node.getLogManager().getStartIdx());
+		Assertions.assertEquals("entries: 10", scheduler.trigger(config, 1000));
+	}
+
+	/**
+	 * 定时检查触发快照，快照落盘后删除日志段并统计释放的字节数
+	 */
+	@Test
+	public void testAutoSnapshotWithPersistence() throws InterruptedException {
+		File snapshotFile = dir.resolve("snapshot").toFile();
+		FileLogStorage logStorage = new FileLogStorage(dir.resolve("log").toString(), 4096);
+		Node node = new Node(1, new EmptyMetaStorage(), new CounterDataStorage(snapshotFile), logStorage);
+		RaftConfig.SnapshotConfig config = node.getConfig().getSnapshotConfig();
+		config.setCheckInterval(10);
+		config.setLogEntries(500);
+		config.setLogBytes(0);
+		config.setInterval(0);
+		SnapshotScheduler scheduler = node.getSnapshotScheduler();
+		scheduler.start();
+		try {
+			commit(node, 1000);
+			long deadline = System.currentTimeMillis() + 10000;
+			while (node.getLogManager().getStartIdx() < 500 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+		} finally {
+			scheduler.stop();
+		}
+		Assertions.assertTrue(scheduler.getSnapshotCount() > 0);
+		Assertions.assertTrue(scheduler.getTotalReclaimed() >= 500);
+		Assertions.assertTrue(scheduler.getTotalReclaimedBytes() > 0);
+		Assertions.assertEquals(node.getLogManager().getReclaimedBytes(), scheduler.getTotalReclaimedBytes());
+		Assertions.assertTrue(logStorage.firstIdx() > 1);
+		logStorage.close();
+
+		// 重启后从快照恢复
+		CounterDataStorage restored = new CounterDataStorage(snapshotFile);
+		int applyIdx = restored.loadSnapshot();
+		Assertions.assertTrue(applyIdx >= 500);
+		Assertions.assertEquals("count: " + applyIdx, restored.println());
+	}
+}
@@ -0,0 +1,94 @@
+package com.gill.consensus.raftplus.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.gill.consensus.raftplus.example.intmap.IntMapSnapshotCodec;
+
+import cn.hutool.core.lang.TypeReference;
+import cn.hutool.json.JSONUtil;
+
+/**
+ * IntMapSnapshotBenchmark IntMap 快照的 JSON 编解码与二进制编解码对比，10M 需要较大的堆（-Xmx8g 以上）
+ *
+ * @author gill
+ * @version 2023/09/20
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx12g")
+public class IntMapSnapshotBenchmark {
+
+	@Param({"1000000", "10000000"})
+	private int keys;
+
+	private Map<String, Integer> map;
+
+	private byte[] json;
+
+	private byte[] binary;
+
+	private final IntMapSnapshotCodec codec = new IntMapSnapshotCodec();
+
+	@Setup
+	public void setup() {
+		map = new HashMap<>(keys * 2);
+		for (int i = 0; i < keys; i++) {
+			map.put("key-" + i, i);
+		}
+		json = jsonEncode();
+		binary = binaryEncode();
+		System.out.printf("%n%d keys, json: %d bytes, binary: %d bytes%n", keys, json.length, binary.length);
+	}
+
+	@Benchmark
+	public byte[] jsonEncode() {
+		return JSONUtil.toJsonStr(map).getBytes(StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public Map<String, Integer> jsonDecode() {
+		return JSONUtil.toBean(new String(json, StandardCharsets.UTF_8), new TypeReference<Map<String, Integer>>() {
+		}, true);
+	}
+
+	@Benchmark
+	public byte[] binaryEncode() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(keys * 16);
+		codec.encode(map, out);
+		return out.toByteArray();
+	}
+
+	@Benchmark
+	public Map<String, Integer> binaryDecode() {
+		Map<String, Integer> result = new HashMap<>(keys * 2);
+		codec.decode(new ByteArrayInputStream(binary), result::put);
+		return result;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(IntMapSnapshotBenchmark.class.getSimpleName()).build()).run();
+	}
+}
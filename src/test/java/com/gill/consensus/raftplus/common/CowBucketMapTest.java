@@ -0,0 +1,91 @@
+package com.gill.consensus.raftplus.common;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * CowBucketMapTest
+ *
+ * @author gill
+ * @version 2023/09/20
+ **/
+public class CowBucketMapTest {
+
+	@Test
+	public void testSnapshotIsolation() {
+		CowBucketMap<String, Integer> map = new CowBucketMap<>(16);
+		Map<String, Integer> expected = new HashMap<>();
+		for (int i = 0; i < 1000; i++) {
+			map.put("k" + i, i);
+			expected.put("k" + i, i);
+		}
+		Map<String, Integer> view = map.snapshot();
+		for (int i = 0; i < 1000; i += 2) {
+			map.put("k" + i, -i);
+			map.remove("k" + (i + 1));
+		}
+		map.put("new", 1);
+		Assertions.assertEquals(expected, view);
+		Assertions.assertEquals(1000, view.size());
+		Assertions.assertEquals(501, map.size());
+		Assertions.assertEquals(-2, map.get("k2"));
+		Assertions.assertNull(map.get("k3"));
+		Assertions.assertThrows(UnsupportedOperationException.class, () -> view.put("k1", 0));
+
+		// 多个视图互不影响
+		Map<String, Integer> view2 = map.snapshot();
+		map.clear();
+		Assertions.assertEquals(0, map.size());
+		Assertions.assertEquals(501, view2.size());
+		Assertions.assertEquals(1, view2.get("new"));
+		Assertions.assertEquals(1000, view.size());
+	}
+
+	@Test
+	public void testConcurrentRead() {
+		CowBucketMap<Integer, Integer> map = new CowBucketMap<>();
+		for (int i = 0; i < 100000; i++) {
+			map.put(i, i);
+		}
+		Map<Integer, Integer> view = map.snapshot();
+		CompletableFuture<Long> sum = CompletableFuture
+				.supplyAsync(() -> view.values().stream().mapToLong(Integer::longValue).sum());
+		for (int i = 0; i < 100000; i++) {
+			map.put(i, 0);
+		}
+		Assertions.assertEquals(99999L * 100000 / 2, sum.join());
+		Assertions.assertEquals(0L, map.values().stream().mapToLong(Integer::longValue).sum());
+	}
+
+	@Test
+	public void testLargeMap() {
+		CowBucketMap<Integer, Integer> map = new CowBucketMap<>();
+		for (int i = 0; i < 100000; i++) {
+			map.put(i, i);
+		}
+		Map<Integer, Integer> view = map.snapshot();
+		int buckets = map.bucketCount();
+
+		// 快照后写入只复制一个桶，桶的大小不随数据量增长
+		Assertions.assertTrue(buckets >= 100000 / CowBucketMap.BUCKET_ENTRIES);
+		Assertions.assertTrue(buckets <= 2 * 100000 / CowBucketMap.BUCKET_ENTRIES);
+
+		// 扩容时视图引用的旧桶保持不变
+		for (int i = 0; i < 400000; i++) {
+			map.put(i, -i);
+		}
+		Assertions.assertTrue(map.bucketCount() > buckets);
+		Assertions.assertEquals(100000, view.size());
+		Assertions.assertEquals(99999, view.get(99999));
+		Assertions.assertNull(view.get(100000));
+		Assertions.assertEquals(99999L * 100000 / 2, view.values().stream().mapToLong(Integer::longValue).sum());
+		Assertions.assertEquals(400000, map.size());
+		for (int i = 0; i < 400000; i++) {
+			Assertions.assertEquals(-i, map.get(i));
+		}
+	}
+}
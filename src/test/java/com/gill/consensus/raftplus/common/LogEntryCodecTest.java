@@ -0,0 +1,36 @@
+package com.gill.consensus.raftplus.common;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.gill.consensus.raftplus.exception.StorageException;
+import com.gill.consensus.raftplus.model.LogEntry;
+
+/**
+ * LogEntryCodecTest
+ *
+ * @author gill
+ * @version 2023/09/20
+ **/
+public class LogEntryCodecTest {
+
+	@Test
+	public void testEncodeAndDecode() {
+		List<LogEntry> logs = Arrays.asList(new LogEntry(1, 1, new byte[0]), new LogEntry(2, 1, "command-2"),
+				new LogEntry(3, 2, new byte[] {0, -1, 127}));
+		byte[] data = LogEntryCodec.encode(logs);
+		Assertions.assertEquals(4 + logs.stream().mapToInt(LogEntryCodec::recordSize).sum(), data.length);
+		Assertions.assertEquals(logs, LogEntryCodec.decode(data));
+		Assertions.assertEquals("command-2", LogEntryCodec.decode(data).get(1).getCommand());
+	}
+
+	@Test
+	public void testCorrupted() {
+		byte[] data = LogEntryCodec.encode(Arrays.asList(new LogEntry(1, 1, "1"), new LogEntry(2, 1, "2")));
+		data[data.length - 1] ^= 1;
+		Assertions.assertThrows(StorageException.class, () -> LogEntryCodec.decode(data));
+	}
+}
@@ -0,0 +1,133 @@
+package com.gill.consensus.raftplus.example.intmap;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import com.gill.consensus.raftplus.apis.SnapshotReader;
+import com.gill.consensus.raftplus.apis.SnapshotWriter;
+import com.gill.consensus.raftplus.exception.StorageException;
+
+import cn.hutool.json.JSONUtil;
+
+/**
+ * IntMapSnapshotCodecTest
+ *
+ * @author gill
+ * @version 2023/09/20
+ **/
+public class IntMapSnapshotCodecTest {
+
+	private static Map<String, Integer> data(int n) {
+		Map<String, Integer> map = new HashMap<>();
+		for (int i = 0; i < n; i++) {
+			map.put("key-" + i, i * 31 - 5000);
+		}
+		map.put("键", Integer.MIN_VALUE);
+		map.put("", Integer.MAX_VALUE);
+		map.put("null", null);
+		return map;
+	}
+
+	private static byte[] encode(IntMapSnapshotCodec codec, Map<String, Integer> map) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		codec.encode(map, out);
+		return out.toByteArray();
+	}
+
+	private static Map<String, Integer> decode(byte[] data) {
+		Map<String, Integer> map = new HashMap<>();
+		new IntMapSnapshotCodec().decode(new ByteArrayInputStream(data), map::put);
+		return map;
+	}
+
+	@Test
+	public void testRoundTrip() {
+		Map<String, Integer> map = data(10000);
+		byte[] withChecksum = encode(new IntMapSnapshotCodec(true), map);
+		byte[] withoutChecksum = encode(new IntMapSnapshotCodec(false), map);
+		Assertions.assertEquals(map, decode(withChecksum));
+		Assertions.assertEquals(map, decode(withoutChecksum));
+		Assertions.assertTrue(withoutChecksum.length < withChecksum.length);
+		Assertions.assertEquals(new HashMap<>(), decode(encode(new IntMapSnapshotCodec(), new HashMap<>())));
+
+		int json = JSONUtil.toJsonStr(map).getBytes(StandardCharsets.UTF_8).length;
+		System.out.printf("json: %d bytes, binary: %d bytes%n", json, withChecksum.length);
+		Assertions.assertTrue(withChecksum.length < json);
+	}
+
+	@Test
+	public void testCorruption() {
+		byte[] data = encode(new IntMapSnapshotCodec(), data(10000));
+		data[data.length / 2] ^= 1;
+		Assertions.assertThrows(StorageException.class, () -> decode(data));
+
+		byte[] truncated = new byte[data.length / 3];
+		System.arraycopy(data, 0, truncated, 0, truncated.length);
+		Assertions.assertThrows(StorageException.class, () -> decode(truncated));
+	}
+
+	@Test
+	public void testDataStorageCompat() {
+		IntMapDataStorage dataStorage = new IntMapDataStorage();
+		dataStorage.saveSnapshot(1, 10, "{\"a\":1,\"b\":2}".getBytes(StandardCharsets.UTF_8));
+		Assertions.assertEquals(2, dataStorage.get("b"));
+		byte[] data = dataStorage.getSnapshot().getData();
+		Assertions.assertTrue(IntMapSnapshotCodec.matches(data));
+
+		IntMapDataStorage restored = new IntMapDataStorage();
+		restored.saveSnapshot(1, 10, data);
+		Assertions.assertEquals(1, restored.get("a"));
+		Assertions.assertEquals(2, restored.get("b"));
+	}
+
+	@Test
+	public void testStreaming() {
+		Map<String, Integer> map = data(200000);
+		IntMapDataStorage source = new IntMapDataStorage();
+		source.saveSnapshot(3, 100, encode(new IntMapSnapshotCodec(), map));
+		byte[] full = source.getSnapshot().getData();
+
+		int chunkSize = 64 * 1024;
+		IntMapDataStorage target = new IntMapDataStorage();
+		int peak = 0;
+		ByteArrayOutputStream sent = new ByteArrayOutputStream();
+		try (SnapshotReader reader = source.openSnapshot();
+				SnapshotWriter writer = target.createSnapshotWriter(reader.getApplyTerm(), reader.getApplyIdx())) {
+			Assertions.assertEquals(full.length, reader.size());
+			for (long offset = 0; offset < reader.size(); offset += chunkSize) {
+				byte[] chunk = reader.read(offset, chunkSize);
+				sent.write(chunk, 0, chunk.length);
+				writer.write(chunk);
+				peak = Math.max(peak, ((IntMapSnapshotReader) reader).capacity());
+				peak = Math.max(peak, ((IntMapSnapshotWriter) writer).capacity());
+			}
+			writer.finish();
+
+			// 偏移回退时重新编码
+			Assertions.assertArrayEquals(Arrays.copyOfRange(full, 10, 20), reader.read(10, 10));
+		}
+		System.out.printf("snapshot: %d bytes, peak buffer: %d bytes%n", full.length, peak);
+		Assertions.assertArrayEquals(full, sent.toByteArray());
+		Assertions.assertTrue(full.length > 20 * chunkSize);
+		Assertions.assertTrue(peak <= 4 * chunkSize);
+		Assertions.assertEquals(100, target.getApplyIdx());
+		Assertions.assertEquals(map, decode(target.getSnapshot().getData()));
+	}
+
+	@Test
+	public void testStreamingIncomplete() {
+		byte[] data = encode(new IntMapSnapshotCodec(), data(10000));
+		IntMapDataStorage target = new IntMapDataStorage();
+		SnapshotWriter writer = target.createSnapshotWriter(1, 10);
+		writer.write(Arrays.copyOf(data, data.length - 1));
+		Assertions.assertThrows(StorageException.class, writer::finish);
+		Assertions.assertEquals(0, target.getApplyIdx());
+	}
+}
@@ -0,0 +1,200 @@
+package com.gill.consensus.raftplus.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.gill.consensus.raftplus.apis.LogStorage;
+import com.gill.consensus.raftplus.model.LogEntry;
+
+/**
+ * FileLogStorageTest
+ *
+ * @author gill
+ * @version 2023/09/19
+ **/
+public class FileLogStorageTest {
+
+	private static final int SEGMENT_SIZE = 64 * 1024;
+
+	@TempDir
+	Path dir;
+
+	private static void assertLogs(List<LogEntry> logs, int start, int end) {
+		Assertions.assertEquals(end - start, logs.size());
+		for (int i = 0; i < logs.size(); i++) {
+			LogEntry logEntry = logs.get(i);
+			Assertions.assertEquals(start + i, logEntry.getIndex());
+			Assertions.assertEquals("command-" + (start + i), logEntry.getCommand());
+		}
+	}
+
+	private static void write(LogStorage storage, int start, int end) {
+		for (int i = start; i < end; i++) {
+			storage.write(new LogEntry(i, 1, "command-" + i));
+		}
+	}
+
+	@Test
+	public void testWriteAndRead() {
+		FileLogStorage storage = new FileLogStorage(dir.toString(), SEGMENT_SIZE);
+		write(storage, 1, 10001);
+		assertLogs(storage.read(1, 10000), 1, 10001);
+		assertLogs(storage.read(4000, 3000), 4000, 7000);
+		assertLogs(storage.read(9990, 100), 9990, 10001);
+		Assertions.assertTrue(dir.toFile().listFiles((d, name) -> name.endsWith(LogSegment.SUFFIX)).length > 1,
+				"segments should roll");
+		storage.close();
+	}
+
+	@Test
+	public void testReopen() {
+		FileLogStorage storage = new FileLogStorage(dir.toString(), SEGMENT_SIZE);
+		write(storage, 1, 5001);
+		storage.close();
+
+		storage = new FileLogStorage(dir.toString(), SEGMENT_SIZE);
+		Assertions.assertEquals(1, storage.firstIdx());
+		assertLogs(storage.loadFromApplyIdx(30, 0), 4971, 5001);
+		assertLogs(storage.loadFromApplyIdx(30, 5000), 4971, 5001);
+		write(storage, 5001, 5101);
+		assertLogs(storage.read(1, 5100), 1, 5101);
+		storage.close();
+	}
+
+	@Test
+	public void testOverwrite() {
+		FileLogStorage storage = new FileLogStorage(dir.toString(), SEGMENT_SIZE);
+		write(storage, 1, 5001);
+		storage.write(new LogEntry(100, 2, "command-100"));
+		assertLogs(storage.read(1, 5000), 1, 101);
+		Assertions.assertEquals(2, storage.read(100, 1).get(0).getTerm());
+		storage.close();
+	}
+
+	@Test
+	public void testRecoverTornTail() throws IOException {
+		FileLogStorage storage = new FileLogStorage(dir.toString(), SEGMENT_SIZE);
+		write(storage, 1, 101);
+		storage.close();
+
+		// 模拟最后一条日志写了一半
+		File[] files = dir.toFile().listFiles((d, name) -> name.endsWith(LogSegment.SUFFIX));
+		Assertions.assertNotNull(files);
+		Assertions.assertEquals(1, files.length);
+		try (RandomAccessFile raf = new RandomAccessFile(files[0], "rw")) {
+			long pos = 0;
+			for (int i = 0; i < 99; i++) {
+				raf.seek(pos);
+				pos += LogSegment.RECORD_HEADER + raf.readInt();
+			}
+			raf.seek(pos + LogSegment.RECORD_HEADER + LogSegment.ENTRY_HEADER);
+			raf.write(new byte[] {'x', 'x'});
+		}
+
+		storage = new FileLogStorage(dir.toString(), SEGMENT_SIZE);
+		assertLogs(storage.read(1, 100), 1, 100);
+		write(storage, 100, 201);
+		assertLogs(storage.read(1, 200), 1, 201);
+		storage.close();
+	}
+
+	@Test
+	public void testSparseIndex() throws IOException {
+		final int segmentSize = 1024 * 1024;
+		FileLogStorage storage = new FileLogStorage(dir.toString(), segmentSize);
+		write(storage, 1, 50001);
+		for (int i = 1; i <= 50000; i += 997) {
+			assertLogs(storage.read(i, 3), i, Math.min(i + 3, 50001));
+		}
+
+		// 覆盖写后索引跟随截断
+		storage.write(new LogEntry(30000, 2, "command-30000"));
+		write(storage, 30001, 30101);
+		assertLogs(storage.read(29990, 200), 29990, 30101);
+		storage.close();
+
+		// 损坏索引后重新打开，丢弃无效的索引项
+		File[] indexes = dir.toFile().listFiles((d, name) -> name.endsWith(LogSegment.INDEX_SUFFIX));
+		Assertions.assertNotNull(indexes);
+		for (File index : indexes) {
+			try (RandomAccessFile raf = new RandomAccessFile(index, "rw")) {
+				raf.seek(16);
+				raf.writeInt(12345);
+			}
+		}
+		storage = new FileLogStorage(dir.toString(), segmentSize);
+		assertLogs(storage.read(1, 30100), 1, 30101);
+		write(storage, 30101, 30201);
+		assertLogs(storage.read(25000, 6000), 25000, 30201);
+		storage.close();
+	}
+
+	@Test
+	public void testIndexFollowsFlush() throws IOException {
+		LogSegment segment = LogSegment.create(dir.toFile(), 1, SEGMENT_SIZE);
+		File indexFile = LogSegment.indexFile(new File(dir.toFile(), LogSegment.fileName(1)));
+		int idx = 1;
+		while (idx < 500) {
+			Assertions.assertTrue(segment.append(new LogEntry(idx, 1, "command-" + idx)));
+			idx++;
+		}
+
+		// 未刷盘的数据不写入索引文件
+		Assertions.assertEquals(0, indexEntries(indexFile));
+		segment.flush();
+		int durable = indexEntries(indexFile);
+		Assertions.assertTrue(durable > 0);
+		while (idx < 1000) {
+			segment.append(new LogEntry(idx, 1, "command-" + idx));
+			idx++;
+		}
+		Assertions.assertEquals(durable, indexEntries(indexFile));
+		List<LogEntry> logs = new ArrayList<>();
+		segment.read(900, 910, logs);
+		assertLogs(logs, 900, 910);
+		segment.close();
+		Assertions.assertTrue(indexEntries(indexFile) > durable);
+	}
+
+	private static int indexEntries(File indexFile) throws IOException {
+		int count = 0;
+		try (RandomAccessFile raf = new RandomAccessFile(indexFile, "r")) {
+			while (raf.getFilePointer() + 8 <= raf.length() && raf.readLong() != 0) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Test
+	public void testThroughput() {
+		FileLogStorage storage = new FileLogStorage(dir.toString(), FileLogStorage.DEFAULT_SEGMENT_SIZE);
+		final int n = 20000;
+		long start = System.nanoTime();
+		write(storage, 1, n + 1);
+		long writeCost = System.nanoTime() - start;
+		start = System.nanoTime();
+		for (int i = 1; i <= n; i += 100) {
+			Assertions.assertEquals(100, storage.read(i, 100).size());
+		}
+		long readCost = System.nanoTime() - start;
+		start = System.nanoTime();
+		for (int i = n; i >= 1; i -= 7) {
+			Assertions.assertEquals(i, storage.read(i, 1).get(0).getIndex());
+		}
+		long randomReadCost = System.nanoTime() - start;
+		System.out.printf("write %d logs cost %dms, %.0f ops/s%n", n, writeCost / 1000000, n * 1e9 / writeCost);
+		System.out.printf("read %d logs cost %dms, %.0f ops/s%n", n, readCost / 1000000, n * 1e9 / readCost);
+		System.out.printf("random read %d logs cost %dms, %.0f ops/s%n", n / 7, randomReadCost / 1000000,
+				n / 7 * 1e9 / randomReadCost);
+		storage.close();
+	}
+}
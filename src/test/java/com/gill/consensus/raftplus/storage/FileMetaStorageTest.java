@@ -0,0 +1,81 @@
+package com.gill.consensus.raftplus.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.gill.consensus.raftplus.model.PersistentProperties;
+
+/**
+ * FileMetaStorageTest
+ *
+ * @author gill
+ * @version 2023/09/20
+ **/
+public class FileMetaStorageTest {
+
+	@TempDir
+	Path dir;
+
+	private static PersistentProperties properties(long term, Integer votedFor) {
+		PersistentProperties properties = new PersistentProperties();
+		properties.setTerm(term);
+		properties.setVotedFor(votedFor);
+		return properties;
+	}
+
+	@Test
+	public void testWriteAndRead() {
+		String path = dir.resolve("meta").toString();
+		FileMetaStorage storage = new FileMetaStorage(path);
+		Assertions.assertEquals(0, storage.read().getTerm());
+		Assertions.assertNull(storage.read().getVotedFor());
+		storage.write(properties(3, 2));
+		storage.write(properties(4, null));
+		storage.write(properties(5, 0));
+		storage.close();
+
+		storage = new FileMetaStorage(path);
+		PersistentProperties properties = storage.read();
+		Assertions.assertEquals(5, properties.getTerm());
+		Assertions.assertEquals(0, properties.getVotedFor());
+		storage.write(properties(6, null));
+		storage.close();
+
+		storage = new FileMetaStorage(path);
+		Assertions.assertEquals(6, storage.read().getTerm());
+		Assertions.assertNull(storage.read().getVotedFor());
+		storage.close();
+	}
+
+	@Test
+	public void testTornWrite() throws IOException {
+		File file = dir.resolve("meta").toFile();
+		FileMetaStorage storage = new FileMetaStorage(file.getPath());
+		storage.write(properties(1, 1));
+		storage.write(properties(2, 3));
+		storage.close();
+
+		// 模拟最后一次写入只写了一半
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.seek(8);
+			raf.writeLong(100);
+		}
+		storage = new FileMetaStorage(file.getPath());
+		PersistentProperties properties = storage.read();
+		Assertions.assertEquals(1, properties.getTerm());
+		Assertions.assertEquals(1, properties.getVotedFor());
+
+		// 继续写入不能覆盖唯一有效的槽位
+		storage.write(properties(3, null));
+		storage.close();
+		storage = new FileMetaStorage(file.getPath());
+		Assertions.assertEquals(3, storage.read().getTerm());
+		storage.close();
+	}
+}